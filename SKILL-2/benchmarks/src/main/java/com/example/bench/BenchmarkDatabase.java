@@ -0,0 +1,65 @@
+package com.example.bench;
+
+import com.example.dao.ProductDao;
+import com.example.entity.Product;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Shared setup for the benchmarks. Every JMH fork is a fresh JVM with its own in-memory
+// inventory_db, so settings applied here before the first DAO call shape that whole fork.
+final class BenchmarkDatabase {
+
+    private static final String RUN_ID = UUID.randomUUID().toString().substring(0, 8);
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private BenchmarkDatabase() {
+    }
+
+    // Must run before HibernateUtil builds the SessionFactory
+    static void configure(boolean showSql) {
+        System.setProperty("hibernate.show_sql", Boolean.toString(showSql));
+        System.setProperty("hibernate.format_sql", Boolean.toString(showSql));
+    }
+
+    static void configureSecondLevelCache(boolean enabled) {
+        System.setProperty("hibernate.cache.use_second_level_cache", Boolean.toString(enabled));
+    }
+
+    // A product with a name no other benchmark product in this JVM has
+    static Product newProduct() {
+        long n = SEQUENCE.incrementAndGet();
+        return new Product("bench-" + RUN_ID + "-" + n, "benchmark product " + n, 10.0 + n % 100, 100);
+    }
+
+    static List<Product> newProducts(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            products.add(newProduct());
+        }
+        return products;
+    }
+
+    // Inserts count products and returns their ids
+    static Long[] seed(ProductDao productDao, int count) {
+        List<Product> products = seedProducts(productDao, count);
+        Long[] ids = new Long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = products.get(i).getId();
+        }
+        return ids;
+    }
+
+    // Inserts count products and returns their names
+    static String[] seedNames(ProductDao productDao, int count) {
+        return seedProducts(productDao, count).stream().map(Product::getName).toArray(String[]::new);
+    }
+
+    private static List<Product> seedProducts(ProductDao productDao, int count) {
+        List<Product> products = newProducts(count);
+        productDao.saveProducts(products, 500);
+        return products;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.bench;
+
+import com.example.dao.ProductDao;
+import com.example.entity.Product;
+import com.example.util.HibernateUtil;
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Lookup by product name: natural id (ProductDao.getProductByName) against a plain HQL query,
+// with the second-level cache off and on. SQL logging stays off so only the lookup is measured.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NaturalIdLookupBenchmark {
+
+    @Param({"1000", "100000"})
+    public int datasetSize;
+
+    @Param({"false", "true"})
+    public boolean secondLevelCache;
+
+    private final ProductDao productDao = new ProductDao();
+    private String[] names;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.configure(false);
+        BenchmarkDatabase.configureSecondLevelCache(secondLevelCache);
+        names = BenchmarkDatabase.seedNames(productDao, datasetSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HibernateUtil.shutdown();
+    }
+
+    private String randomName() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+
+    @Benchmark
+    public Product byNaturalId() {
+        return productDao.getProductByName(randomName());
+    }
+
+    @Benchmark
+    public Product byHqlQuery() {
+        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+            return session.createSelectionQuery("from Product p where p.name = :name", Product.class)
+                    .setParameter("name", randomName())
+                    .uniqueResult();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.bench;
+
+import com.example.dao.ProductDao;
+import com.example.entity.Product;
+import com.example.util.HibernateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Single-row ProductDao operations against a table pre-filled with datasetSize products
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ProductDaoBenchmark {
+
+    @Param({"1000", "100000"})
+    public int datasetSize;
+
+    @Param({"false", "true"})
+    public boolean showSql;
+
+    private final ProductDao productDao = new ProductDao();
+    private Long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.configure(showSql);
+        ids = BenchmarkDatabase.seed(productDao, datasetSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HibernateUtil.shutdown();
+    }
+
+    private Long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+
+    private static double randomPrice() {
+        return 1 + ThreadLocalRandom.current().nextInt(10_000) / 100.0;
+    }
+
+    // A fresh product for each deleteProductById call
+    @State(Scope.Thread)
+    public static class Doomed {
+        Long id;
+
+        @Setup(Level.Invocation)
+        public void insert(ProductDaoBenchmark benchmark) {
+            Product product = BenchmarkDatabase.newProduct();
+            benchmark.productDao.saveProduct(product);
+            id = product.getId();
+        }
+    }
+
+    @Benchmark
+    public Product saveProduct() {
+        Product product = BenchmarkDatabase.newProduct();
+        productDao.saveProduct(product);
+        return product;
+    }
+
+    @Benchmark
+    public Product getProductById() {
+        return productDao.getProductById(randomId());
+    }
+
+    @Benchmark
+    public void updateProductPrice() {
+        productDao.updateProductPrice(randomId(), randomPrice());
+    }
+
+    @Benchmark
+    public void updateProductQuantity() {
+        productDao.updateProductQuantity(randomId(), ThreadLocalRandom.current().nextInt(1_000));
+    }
+
+    @Benchmark
+    public int updateProductInPlace() {
+        return productDao.updateProduct(randomId(), randomPrice(), null);
+    }
+
+    @Benchmark
+    public int adjustQuantity() {
+        return productDao.adjustQuantity(randomId(), 1);
+    }
+
+    @Benchmark
+    public void deleteProductById(Doomed doomed) {
+        productDao.deleteProductById(doomed.id);
+    }
+}
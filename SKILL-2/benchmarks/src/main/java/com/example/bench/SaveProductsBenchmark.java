@@ -0,0 +1,57 @@
+package com.example.bench;
+
+import com.example.dao.BulkInsertResult;
+import com.example.dao.ProductDao;
+import com.example.util.HibernateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// ProductDao.saveProducts: time to insert `rows` products at each JDBC batch size.
+// rows / score gives rows per millisecond.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SaveProductsBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"1", "50", "500"})
+    public int batchSize;
+
+    @Param({"false", "true"})
+    public boolean showSql;
+
+    private final ProductDao productDao = new ProductDao();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.configure(showSql);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        HibernateUtil.shutdown();
+    }
+
+    @Benchmark
+    public BulkInsertResult saveProducts() {
+        return productDao.saveProducts(BenchmarkDatabase.newProducts(rows), batchSize);
+    }
+}
@@ -1,13 +1,27 @@
 package com.example;
 
+import com.example.dao.AsyncProductDao;
+import com.example.dao.BulkInsertResult;
 import com.example.dao.ProductDao;
 import com.example.entity.Product;
+import com.example.metrics.InventoryMetrics;
+import com.example.service.QuantityWriteBehindBuffer;
 import com.example.util.HibernateUtil;
+import com.example.util.PoolMetrics;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // Build the SessionFactory in the background; the first DAO call waits for it if needed
+        HibernateUtil.initializeAsync();
         ProductDao productDao = new ProductDao();
 
         // 3. Insert multiple Product records into the database
@@ -15,9 +29,10 @@ public class Main {
         Product p2 = new Product("Phone", "Smartphone", 700.0, 25);
         Product p3 = new Product("Headphones", "Noise cancelling", 150.0, 40);
 
-        productDao.saveProducts(Arrays.asList(p1, p2, p3));
+        BulkInsertResult insertResult =
+                productDao.saveProducts(Arrays.asList(p1, p2, p3), HibernateUtil.getJdbcBatchSize());
 
-        System.out.println("Inserted products with generated IDs:");
+        System.out.println("Inserted products with generated IDs: " + insertResult);
         System.out.println(p1);
         System.out.println(p2);
         System.out.println(p3);
@@ -28,6 +43,11 @@ public class Main {
         System.out.println("\nRetrieving product with id = " + exampleId);
         Product retrieved = productDao.getProductById(exampleId);
         System.out.println("Retrieved: " + retrieved);
+        // ...and by name, the product's natural id (repeat lookups hit the cache when it is on)
+        for (int i = 0; i < 3; i++) {
+            productDao.getProductByName("Phone");
+        }
+        System.out.println("Retrieved by name: " + productDao.getProductByName("Phone"));
 
         // 5. Update the price or quantity of any selected product
         System.out.println("\nUpdating price and quantity for product id = " + exampleId);
@@ -36,6 +56,28 @@ public class Main {
         Product updated = productDao.getProductById(exampleId);
         System.out.println("Updated: " + updated);
 
+        // Single-statement updates: no SELECT before the UPDATE
+        System.out.println("\nRepricing all products by -10% and selling 2 phones in SQL");
+        int repriced = productDao.adjustPrices(Arrays.asList(p1.getId(), p2.getId(), p3.getId()), -10);
+        int sold = productDao.adjustQuantity(p2.getId(), -2);
+        System.out.println("Repriced " + repriced + " products, stock change applied: " + (sold == 1));
+        System.out.println("Phone now: " + productDao.getProductById(p2.getId()));
+
+        // Walk the table page by page (keyset pagination) and as a stream
+        System.out.println("\nFirst page of 2 products: " + productDao.page(null, 2));
+        long streamed = productDao.forEachProduct(product -> { });
+        System.out.println("Streamed " + streamed + " products");
+
+        // Many independent lookups at once through the asynchronous facade
+        try (AsyncProductDao asyncDao = new AsyncProductDao()) {
+            List<CompletableFuture<Product>> lookups = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                lookups.add(asyncDao.getProductById(i % 2 == 0 ? p1.getId() : p2.getId()));
+            }
+            CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).join();
+            System.out.println("Completed " + lookups.size() + " concurrent lookups");
+        }
+
         // 6. Delete a product record by id if it is discontinued
         Long discontinuedId = p3.getId();
         System.out.println("\nDeleting discontinued product with id = " + discontinuedId);
@@ -43,6 +85,38 @@ public class Main {
         Product deletedCheck = productDao.getProductById(discontinuedId);
         System.out.println("After delete, found: " + deletedCheck);
 
+        // A burst of point-of-sale deltas, merged per product and written behind in one batch
+        Path journal = Files.createTempDirectory("quantity-journal");
+        try (QuantityWriteBehindBuffer writeBehind = new QuantityWriteBehindBuffer(journal)) {
+            for (int i = 0; i < 1_000; i++) {
+                writeBehind.add(i % 2 == 0 ? p1.getId() : p2.getId(), i % 10 == 0 ? 5 : -1);
+            }
+            writeBehind.flush();
+            System.out.println("Wrote " + writeBehind.getAcceptedDeltas() + " stock deltas as "
+                    + writeBehind.getUpdatedRows() + " row updates in " + writeBehind.getFlushes() + " flush(es)");
+        }
+        System.out.println("Laptop now: " + productDao.getProductById(p1.getId()));
+
+        // Second-level cache statistics (run with -Dhibernate.cache.use_second_level_cache=true)
+        CacheRegionStatistics cacheStats = HibernateUtil.getProductCacheStatistics();
+        if (cacheStats != null) {
+            System.out.println("\nProduct cache: hits=" + cacheStats.getHitCount()
+                    + ", misses=" + cacheStats.getMissCount()
+                    + ", puts=" + cacheStats.getPutCount());
+            Statistics statistics = HibernateUtil.getStatistics();
+            System.out.println("Natural id cache: hits=" + statistics.getNaturalIdCacheHitCount()
+                    + ", misses=" + statistics.getNaturalIdCacheMissCount()
+                    + ", resolution queries=" + statistics.getNaturalIdQueryExecutionCount());
+        }
+
+        PoolMetrics poolMetrics = HibernateUtil.getPoolMetrics();
+        if (poolMetrics != null) {
+            System.out.println("Connection pool: " + poolMetrics);
+        }
+
+        // Operation latencies, per-session counts and slow statements as JSON
+        System.out.println("Metrics: " + InventoryMetrics.snapshot());
+
         // Shutdown Hibernate SessionFactory
         HibernateUtil.shutdown();
     }
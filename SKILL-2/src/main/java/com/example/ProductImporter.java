@@ -0,0 +1,342 @@
+package com.example;
+
+import com.example.dao.BulkInsertResult;
+import com.example.entity.Product;
+import com.example.util.CheckpointStore;
+import com.example.util.HibernateUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams a CSV or NDJSON product file into the products table.
+ *
+ * Usage: ProductImporter <file> [--format csv|ndjson] [--chunk-size N] [--queue-chunks N] [--restart]
+ *
+ * One thread parses the file into chunks while the calling thread inserts them through a
+ * StatelessSession, so at most queue-chunks + 2 chunks are in memory at any time. Each chunk
+ * is committed together with the line number it ends on; a re-run of the same file skips
+ * everything up to the last committed line. Use --restart to ignore that checkpoint.
+ *
+ * CSV files need a header row naming the columns name, description, price and quantity
+ * (any order). NDJSON files hold one JSON object per line with the same field names.
+ * Checkpoints live in the database, so resuming after a crash needs a file database, e.g.
+ * -Dhibernate.connection.url=jdbc:h2:./data/inventory_db;MODE=MySQL
+ */
+public class ProductImporter {
+
+    public enum Format {
+        CSV, NDJSON
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int DEFAULT_QUEUE_CHUNKS = 4;
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    // A run of parsed products plus the last source line they cover
+    private static final class Chunk {
+        private final List<Product> products;
+        private final long lastLine;
+
+        private Chunk(List<Product> products, long lastLine) {
+            this.products = products;
+            this.lastLine = lastLine;
+        }
+    }
+
+    private static final Chunk END_OF_INPUT = new Chunk(List.of(), -1);
+
+    private final Path source;
+    private final Format format;
+    private final int chunkSize;
+    private final int queueChunks;
+    private final boolean restart;
+
+    private volatile Throwable parseFailure;
+
+    public ProductImporter(Path source, Format format, int chunkSize, int queueChunks, boolean restart) {
+        if (chunkSize < 1 || queueChunks < 1) {
+            throw new IllegalArgumentException("chunkSize and queueChunks must be positive");
+        }
+        this.source = source;
+        this.format = format;
+        this.chunkSize = chunkSize;
+        this.queueChunks = queueChunks;
+        this.restart = restart;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ProductImporter <file> [--format csv|ndjson] "
+                    + "[--chunk-size N] [--queue-chunks N] [--restart]");
+            System.exit(2);
+        }
+        Path source = Paths.get(args[0]);
+        Format format = null;
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        int queueChunks = DEFAULT_QUEUE_CHUNKS;
+        boolean restart = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--format" -> format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                case "--chunk-size" -> chunkSize = Integer.parseInt(args[++i]);
+                case "--queue-chunks" -> queueChunks = Integer.parseInt(args[++i]);
+                case "--restart" -> restart = true;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (format == null) {
+            format = detectFormat(source);
+        }
+
+        int exitCode = 0;
+        try {
+            BulkInsertResult result = new ProductImporter(source, format, chunkSize, queueChunks, restart).run();
+            System.out.println("Import finished: " + result);
+        } catch (Exception e) {
+            System.err.println("Import failed: " + e.getMessage());
+            e.printStackTrace();
+            exitCode = 1;
+        } finally {
+            HibernateUtil.shutdown();
+        }
+        System.exit(exitCode);
+    }
+
+    static Format detectFormat(Path source) {
+        String fileName = source.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (fileName.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        if (fileName.endsWith(".ndjson") || fileName.endsWith(".jsonl") || fileName.endsWith(".json")) {
+            return Format.NDJSON;
+        }
+        throw new IllegalArgumentException("Cannot tell the format of " + source + ", pass --format");
+    }
+
+    public BulkInsertResult run() throws Exception {
+        String checkpointName = "product-import:" + source.toAbsolutePath().normalize();
+        int rows = 0;
+        long start;
+
+        try (StatelessSession session = HibernateUtil.getSessionFactory().openStatelessSession()) {
+            start = System.nanoTime();
+            session.setJdbcBatchSize(Math.min(chunkSize, HibernateUtil.getJdbcBatchSize()));
+
+            long resumeAfterLine = prepareCheckpoint(session, checkpointName);
+            if (resumeAfterLine > 0) {
+                System.out.println("Resuming " + source + " after line " + resumeAfterLine);
+            }
+
+            BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(queueChunks);
+            Thread parser = new Thread(() -> parseInto(queue, resumeAfterLine), "product-import-parser");
+            parser.setDaemon(true);
+            parser.start();
+
+            try {
+                for (Chunk chunk = queue.take(); chunk != END_OF_INPUT; chunk = queue.take()) {
+                    writeChunk(session, checkpointName, chunk);
+                    rows += chunk.products.size();
+                    System.out.println("Committed " + rows + " products (through line " + chunk.lastLine + ")");
+                }
+            } finally {
+                parser.interrupt();
+            }
+        }
+
+        if (parseFailure instanceof Error) {
+            throw (Error) parseFailure;
+        }
+        if (parseFailure != null) {
+            throw (Exception) parseFailure;
+        }
+        return new BulkInsertResult(rows, chunkSize, System.nanoTime() - start);
+    }
+
+    private long prepareCheckpoint(StatelessSession session, String checkpointName) {
+        Transaction transaction = session.beginTransaction();
+        try {
+            CheckpointStore.createTableIfMissing(session);
+            long resumeAfterLine;
+            if (restart) {
+                CheckpointStore.clear(session, checkpointName);
+                resumeAfterLine = 0;
+            } else {
+                resumeAfterLine = Math.max(0, CheckpointStore.read(session, checkpointName));
+            }
+            transaction.commit();
+            return resumeAfterLine;
+        } catch (RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+    }
+
+    // Insert one chunk and move the checkpoint in the same transaction
+    private void writeChunk(StatelessSession session, String checkpointName, Chunk chunk) {
+        Transaction transaction = session.beginTransaction();
+        try {
+            for (Product product : chunk.products) {
+                session.insert(product);
+            }
+            CheckpointStore.save(session, checkpointName, chunk.lastLine);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        }
+    }
+
+    // Producer side: runs on the parser thread, always ends the stream with END_OF_INPUT
+    private void parseInto(BlockingQueue<Chunk> queue, long resumeAfterLine) {
+        try {
+            try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                Map<String, Integer> header = null;
+                List<Product> products = new ArrayList<>(chunkSize);
+                long lineNumber = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (format == Format.CSV && header == null) {
+                        header = parseCsvHeader(line);
+                        continue;
+                    }
+                    if (lineNumber <= resumeAfterLine || line.isBlank()) {
+                        continue;
+                    }
+                    products.add(format == Format.CSV
+                            ? parseCsvLine(line, header, lineNumber)
+                            : parseJsonLine(line, lineNumber));
+                    if (products.size() == chunkSize) {
+                        queue.put(new Chunk(products, lineNumber));
+                        products = new ArrayList<>(chunkSize);
+                    }
+                }
+                if (!products.isEmpty()) {
+                    queue.put(new Chunk(products, lineNumber));
+                }
+            } catch (InterruptedException e) {
+                // The writer gave up; nobody is waiting for more chunks
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable e) {
+                // Errors too (e.g. a StackOverflowError on a malformed line): the writer must
+                // still get END_OF_INPUT, or it waits on the queue forever
+                parseFailure = e;
+            }
+            queue.put(END_OF_INPUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, Integer> parseCsvHeader(String line) {
+        List<String> columns = splitCsv(line, 1);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            header.put(columns.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String required : List.of("name", "price", "quantity")) {
+            if (!header.containsKey(required)) {
+                throw new IllegalArgumentException("CSV header is missing column '" + required + "'");
+            }
+        }
+        return header;
+    }
+
+    private static Product parseCsvLine(String line, Map<String, Integer> header, long lineNumber) {
+        List<String> fields = splitCsv(line, lineNumber);
+        Integer descriptionIndex = header.get("description");
+        return toProduct(
+                field(fields, header.get("name")),
+                descriptionIndex == null ? null : field(fields, descriptionIndex),
+                field(fields, header.get("price")),
+                field(fields, header.get("quantity")),
+                lineNumber);
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    // RFC 4180 style splitting for a single physical line: quoted fields may contain
+    // commas and doubled quotes, but not line breaks
+    static List<String> splitCsv(String line, long lineNumber) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": unterminated quoted field");
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static Product parseJsonLine(String line, long lineNumber) throws IOException {
+        JsonNode node = JSON.readTree(line);
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": expected a JSON object");
+        }
+        return toProduct(text(node, "name"), text(node, "description"),
+                text(node, "price"), text(node, "quantity"), lineNumber);
+    }
+
+    private static String text(JsonNode node, String fieldName) {
+        JsonNode value = node.get(fieldName);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static Product toProduct(String name, String description, String price, String quantity,
+                                     long lineNumber) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": name is required");
+        }
+        try {
+            return new Product(name.trim(),
+                    description == null || description.isEmpty() ? null : description,
+                    Double.valueOf(price.trim()),
+                    Integer.valueOf(quantity.trim()));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + ": price and quantity must be numbers", e);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.dao;
+
+import com.example.entity.Product;
+import com.example.util.HibernateUtil;
+import com.example.util.PoolMetrics;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Non-blocking facade over the product table.
+ *
+ * Every call returns a CompletableFuture. At most maxConcurrency operations hold a
+ * database session at once (by default the connection pool's maximum size), so thousands of
+ * queued calls wait on a semaphore instead of on the pool. By default each call gets its own
+ * virtual thread on Java 21+; on older JVMs calls queue for maxConcurrency platform threads. Unlike ProductDao, failures are not printed: the transaction is rolled back
+ * and the future completes exceptionally with the original cause.
+ */
+public class AsyncProductDao implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_CONCURRENCY = 10;
+
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore permits;
+
+    public AsyncProductDao() {
+        this(defaultMaxConcurrency());
+    }
+
+    private AsyncProductDao(int maxConcurrency) {
+        this(newExecutor(maxConcurrency), true, maxConcurrency);
+    }
+
+    // Runs on the given executor, which the caller keeps ownership of
+    public AsyncProductDao(ExecutorService executor, int maxConcurrency) {
+        this(executor, false, maxConcurrency);
+    }
+
+    private AsyncProductDao(ExecutorService executor, boolean ownsExecutor, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+    // One virtual thread per task when the JVM has them (Java 21+), otherwise a fixed pool of
+    // maxConcurrency daemon platform threads: a platform thread per task would only block on
+    // the semaphore, so no more than that many could do anything at once. Looked up
+    // reflectively because the module targets Java 17.
+    static ExecutorService newExecutor(int maxConcurrency) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxConcurrency, task -> {
+                Thread thread = new Thread(task, "async-product-dao-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static int defaultMaxConcurrency() {
+        PoolMetrics pool = HibernateUtil.getPoolMetrics();
+        return pool == null || pool.getMaximumPoolSize() < 1 ? DEFAULT_MAX_CONCURRENCY : pool.getMaximumPoolSize();
+    }
+
+    public CompletableFuture<Product> saveProduct(Product product) {
+        return inTransaction(session -> {
+            session.persist(product);
+            return product;
+        });
+    }
+
+    // Inserts all products in one transaction using JDBC batches of batchSize
+    public CompletableFuture<BulkInsertResult> saveProducts(List<Product> products, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        return inTransaction(session -> {
+            long start = System.nanoTime();
+            session.setJdbcBatchSize(batchSize);
+            session.setCacheMode(CacheMode.IGNORE);
+            int saved = 0;
+            for (Product product : products) {
+                session.persist(product);
+                if (++saved % batchSize == 0) {
+                    session.flush();
+                    session.clear();
+                }
+            }
+            session.flush();
+            return new BulkInsertResult(saved, batchSize, System.nanoTime() - start);
+        });
+    }
+
+    // Completes with null when there is no product with this id
+    public CompletableFuture<Product> getProductById(Long id) {
+        return inTransaction(session -> session.get(Product.class, id));
+    }
+
+    // Completes with null when there is no product with this name
+    public CompletableFuture<Product> getProductByName(String name) {
+        return inTransaction(session -> session.bySimpleNaturalId(Product.class).load(name));
+    }
+
+    // Completes with false when there is no product with this id
+    public CompletableFuture<Boolean> updateProductPrice(Long id, Double newPrice) {
+        return inTransaction(session -> {
+            Product product = session.get(Product.class, id);
+            if (product == null) {
+                return false;
+            }
+            product.setPrice(newPrice);
+            return true;
+        });
+    }
+
+    public CompletableFuture<Boolean> updateProductQuantity(Long id, Integer newQuantity) {
+        return inTransaction(session -> {
+            Product product = session.get(Product.class, id);
+            if (product == null) {
+                return false;
+            }
+            product.setQuantity(newQuantity);
+            return true;
+        });
+    }
+
+    // Same as ProductDao.updateProduct: one UPDATE, completes with the updated row count
+    public CompletableFuture<Integer> updateProduct(Long id, Double newPrice, Integer newQuantity) {
+        if (newPrice == null && newQuantity == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return inTransaction(session -> ProductDao.updateProduct(session, id, newPrice, newQuantity));
+    }
+
+    // Same as ProductDao.adjustQuantity: completes with 1 if applied, 0 if missing or short of stock
+    public CompletableFuture<Integer> adjustQuantity(Long id, int delta) {
+        return inTransaction(session -> ProductDao.adjustQuantity(session, id, delta));
+    }
+
+    // Completes with false when there is no product with this id
+    public CompletableFuture<Boolean> deleteProductById(Long id) {
+        return inTransaction(session -> {
+            Product product = session.get(Product.class, id);
+            if (product == null) {
+                return false;
+            }
+            session.remove(product);
+            return true;
+        });
+    }
+
+    private <T> CompletableFuture<T> inTransaction(Function<Session, T> work) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+                Transaction transaction = session.beginTransaction();
+                try {
+                    T result = work.apply(session);
+                    transaction.commit();
+                    return result;
+                } catch (RuntimeException e) {
+                    if (transaction.isActive()) {
+                        transaction.rollback();
+                    }
+                    throw e;
+                }
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    // Operations currently waiting for a database permit
+    public int getQueuedOperations() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+}
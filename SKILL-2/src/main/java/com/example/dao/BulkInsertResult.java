@@ -0,0 +1,44 @@
+package com.example.dao;
+
+// Outcome of a bulk insert: how many rows were written and how fast
+public class BulkInsertResult {
+
+    private final int rows;
+    private final int batchSize;
+    private final long elapsedNanos;
+
+    public BulkInsertResult(int rows, int batchSize, long elapsedNanos) {
+        this.rows = rows;
+        this.batchSize = batchSize;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getRowsPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0.0;
+        }
+        return rows * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkInsertResult{" +
+                "rows=" + rows +
+                ", batchSize=" + batchSize +
+                ", elapsedMs=" + elapsedNanos / 1_000_000 +
+                ", rowsPerSecond=" + String.format("%.1f", getRowsPerSecond()) +
+                '}';
+    }
+}
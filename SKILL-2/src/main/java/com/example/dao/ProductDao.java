@@ -1,18 +1,57 @@
 package com.example.dao;
 
 import com.example.entity.Product;
+import com.example.metrics.InventoryMetrics;
 import com.example.util.HibernateUtil;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.type.StandardBasicTypes;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
 public class ProductDao {
 
+    // Upper bound on ids per "in (...)" list in bulk statements
+    private static final int MAX_IDS_PER_STATEMENT = 1000;
+
+    // Rows fetched per JDBC round trip when streaming
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    private final Supplier<SessionFactory> sessionFactory;
+
+    public ProductDao() {
+        this(HibernateUtil::getSessionFactory);
+    }
+
+    // Works against the given factory instead of HibernateUtil's, e.g. one shard of several
+    public ProductDao(SessionFactory sessionFactory) {
+        this(() -> sessionFactory);
+    }
+
+    private ProductDao(Supplier<SessionFactory> sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    // The factory this DAO works against, for callers that need a session of their own
+    public SessionFactory getSessionFactory() {
+        return sessionFactory.get();
+    }
+
     // Create: insert a single product
     public void saveProduct(Product product) {
+        long start = System.nanoTime();
         Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+        try (Session session = sessionFactory.get().openSession()) {
             transaction = session.beginTransaction();
             session.persist(product);
             transaction.commit();
@@ -21,37 +60,136 @@ public class ProductDao {
                 transaction.rollback();
             }
             e.printStackTrace();
+        } finally {
+            InventoryMetrics.recordOperation("saveProduct", start);
         }
     }
 
     // Create: insert multiple products in one transaction
     public void saveProducts(List<Product> products) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            for (Product product : products) {
-                session.persist(product);
-            }
-            transaction.commit();
+        saveProducts(products, HibernateUtil.getJdbcBatchSize(sessionFactory.get()));
+    }
+
+    // Create: bulk insert using JDBC batches of batchSize rows. The session is
+    // flushed and cleared after every batch so the persistence context stays small.
+    public BulkInsertResult saveProducts(List<Product> products, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        long start = System.nanoTime();
+        try {
+            return insertProducts(products, batchSize);
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
             e.printStackTrace();
+            return new BulkInsertResult(0, batchSize, System.nanoTime() - start);
         }
     }
 
+    // saveProducts, but a failed batch is rolled back and its exception thrown instead of
+    // printed, for ShardedProductDao to report which shard it was on
+    BulkInsertResult insertProducts(List<Product> products, int batchSize) {
+        long start = System.nanoTime();
+        int saved = 0;
+        try (Session session = sessionFactory.get().openSession()) {
+            session.setJdbcBatchSize(batchSize);
+            // Bulk loads should not push every new row into the second-level cache
+            session.setCacheMode(CacheMode.IGNORE);
+            Transaction transaction = session.beginTransaction();
+            try {
+                for (Product product : products) {
+                    session.persist(product);
+                    if (++saved % batchSize == 0) {
+                        session.flush();
+                        session.clear();
+                    }
+                }
+                transaction.commit();
+            } catch (RuntimeException e) {
+                // roll back while the session (and its connection) is still open
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        } finally {
+            InventoryMetrics.recordOperation("saveProducts", start);
+        }
+        return new BulkInsertResult(saved, batchSize, System.nanoTime() - start);
+    }
+
     // Read: get product by ID
     public Product getProductById(Long id) {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+        long start = System.nanoTime();
+        try (Session session = sessionFactory.get().openSession()) {
             return session.get(Product.class, id);
+        } finally {
+            InventoryMetrics.recordOperation("getProductById", start);
+        }
+    }
+
+    // Read: get product by its natural id (name), or null if there is none. With the
+    // second-level cache on, a repeat lookup is answered from the natural-id and entity
+    // caches without any SQL.
+    public Product getProductByName(String name) {
+        long start = System.nanoTime();
+        try (Session session = sessionFactory.get().openSession()) {
+            return session.bySimpleNaturalId(Product.class).load(name);
+        } finally {
+            InventoryMetrics.recordOperation("getProductByName", start);
+        }
+    }
+
+    // Read: stream every product in id order to action without keeping them in memory.
+    // Uses a StatelessSession, so nothing accumulates in a persistence context either.
+    // Returns the number of products visited.
+    public long forEachProduct(Consumer<Product> action) {
+        return forEachProduct(action, DEFAULT_FETCH_SIZE);
+    }
+
+    public long forEachProduct(Consumer<Product> action, int fetchSize) {
+        long start = System.nanoTime();
+        long visited = 0;
+        try (StatelessSession session = sessionFactory.get().openStatelessSession();
+             ScrollableResults<Product> results = session
+                     .createSelectionQuery("from Product p order by p.id", Product.class)
+                     .setFetchSize(fetchSize)
+                     .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                action.accept(results.get());
+                visited++;
+            }
+        } finally {
+            InventoryMetrics.recordOperation("forEachProduct", start);
+        }
+        return visited;
+    }
+
+    // Read: keyset pagination. Returns up to limit products with id greater than afterId,
+    // in id order. Pass null for the first page, then the last id of each page for the next;
+    // every page is an index range scan, however deep into the table it is.
+    public List<Product> page(Long afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        long start = System.nanoTime();
+        try (Session session = sessionFactory.get().openSession()) {
+            return session.createSelectionQuery("from Product p where p.id > :afterId order by p.id", Product.class)
+                    .setParameter("afterId", afterId == null ? Long.MIN_VALUE : afterId)
+                    .setMaxResults(limit)
+                    .setReadOnly(true)
+                    // only takes effect when hibernate.cache.use_query_cache is on
+                    .setCacheable(true)
+                    .list();
+        } finally {
+            InventoryMetrics.recordOperation("page", start);
         }
     }
 
     // Update: price or quantity
     public void updateProductPrice(Long id, Double newPrice) {
+        long start = System.nanoTime();
         Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+        try (Session session = sessionFactory.get().openSession()) {
             transaction = session.beginTransaction();
             Product product = session.get(Product.class, id);
             if (product != null) {
@@ -64,12 +202,15 @@ public class ProductDao {
                 transaction.rollback();
             }
             e.printStackTrace();
+        } finally {
+            InventoryMetrics.recordOperation("updateProductPrice", start);
         }
     }
 
     public void updateProductQuantity(Long id, Integer newQuantity) {
+        long start = System.nanoTime();
         Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+        try (Session session = sessionFactory.get().openSession()) {
             transaction = session.beginTransaction();
             Product product = session.get(Product.class, id);
             if (product != null) {
@@ -82,13 +223,111 @@ public class ProductDao {
                 transaction.rollback();
             }
             e.printStackTrace();
+        } finally {
+            InventoryMetrics.recordOperation("updateProductQuantity", start);
+        }
+    }
+
+    // Update without loading: set price and/or quantity in one UPDATE statement.
+    // Null arguments leave that column unchanged. Returns the number of rows updated.
+    public int updateProduct(Long id, Double newPrice, Integer newQuantity) {
+        if (newPrice == null && newQuantity == null) {
+            return 0;
+        }
+        return executeUpdate("updateProduct", session -> updateProduct(session, id, newPrice, newQuantity));
+    }
+
+    // Statement behind updateProduct, shared with AsyncProductDao
+    static int updateProduct(Session session, Long id, Double newPrice, Integer newQuantity) {
+        StringBuilder hql = new StringBuilder("update versioned Product p set ");
+        if (newPrice != null) {
+            hql.append("p.price = :price");
+        }
+        if (newQuantity != null) {
+            hql.append(newPrice != null ? ", " : "").append("p.quantity = :quantity");
+        }
+        hql.append(" where p.id = :id");
+        var update = session.createMutationQuery(hql.toString()).setParameter("id", id);
+        if (newPrice != null) {
+            update.setParameter("price", newPrice);
+        }
+        if (newQuantity != null) {
+            update.setParameter("quantity", newQuantity);
+        }
+        return update.executeUpdate();
+    }
+
+    // Update without loading: change the price of every listed product by percentChange
+    // (e.g. 10 for +10%, -5 for -5%), rounded to cents. Large id lists are split into
+    // several statements inside one transaction. Returns the number of rows updated.
+    public int adjustPrices(Collection<Long> ids, double percentChange) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        double factor = 1.0 + percentChange / 100.0;
+        List<Long> idList = new ArrayList<>(ids);
+        return executeUpdate("adjustPrices", session -> {
+            int updated = 0;
+            for (int from = 0; from < idList.size(); from += MAX_IDS_PER_STATEMENT) {
+                List<Long> slice = idList.subList(from, Math.min(idList.size(), from + MAX_IDS_PER_STATEMENT));
+                updated += session.createMutationQuery(
+                                "update versioned Product p set p.price = round(p.price * :factor, 2) " +
+                                        "where p.id in :ids")
+                        .setParameter("factor", factor, StandardBasicTypes.DOUBLE)
+                        .setParameter("ids", slice)
+                        .executeUpdate();
+            }
+            return updated;
+        });
+    }
+
+    // Update without loading: add delta (negative to take stock away) to the quantity in SQL.
+    // The row is left alone if the result would drop below zero, so 0 means "no such product"
+    // or "not enough stock"; 1 means the change was applied.
+    public int adjustQuantity(Long id, int delta) {
+        return executeUpdate("adjustQuantity", session -> adjustQuantity(session, id, delta));
+    }
+
+    // Statement behind adjustQuantity, shared with AsyncProductDao
+    static int adjustQuantity(Session session, Long id, int delta) {
+        return session.createMutationQuery(
+                        "update versioned Product p set p.quantity = p.quantity + :delta " +
+                                "where p.id = :id and p.quantity + :delta >= 0")
+                .setParameter("delta", delta)
+                .setParameter("id", id)
+                .executeUpdate();
+    }
+
+    // Runs a bulk UPDATE/DELETE in its own transaction. HQL bulk statements also evict the
+    // affected second-level cache region, so cached Products never outlive the change.
+    // The statements above are "update versioned" so optimistic writers see the change too.
+    // A failed statement is rolled back and its exception rethrown, so a 0 returned always
+    // means that no row matched.
+    private int executeUpdate(String operation, ToIntFunction<Session> work) {
+        long start = System.nanoTime();
+        try (Session session = sessionFactory.get().openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                int updated = work.applyAsInt(session);
+                transaction.commit();
+                return updated;
+            } catch (RuntimeException e) {
+                // roll back while the session (and its connection) is still open
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        } finally {
+            InventoryMetrics.recordOperation(operation, start);
         }
     }
 
     // Delete: remove product by ID
     public void deleteProductById(Long id) {
+        long start = System.nanoTime();
         Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+        try (Session session = sessionFactory.get().openSession()) {
             transaction = session.beginTransaction();
             Product product = session.get(Product.class, id);
             if (product != null) {
@@ -100,6 +339,8 @@ public class ProductDao {
                 transaction.rollback();
             }
             e.printStackTrace();
+        } finally {
+            InventoryMetrics.recordOperation("deleteProductById", start);
         }
     }
 }
@@ -0,0 +1,35 @@
+package com.example.dao;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// A multi-shard write that failed on some shards. There is no cross-shard transaction, so the
+// other shards committed their share: getCommittedRows() rows in all.
+public class ShardWriteException extends RuntimeException {
+
+    private final Map<Integer, Throwable> failures;
+    private final int committedRows;
+
+    public ShardWriteException(Map<Integer, Throwable> failures, int committedRows) {
+        super("write failed on shard(s) " + failures.keySet() + "; " + committedRows
+                + " rows committed on the others", failures.values().iterator().next());
+        this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+        this.committedRows = committedRows;
+        failures.values().stream().skip(1).forEach(this::addSuppressed);
+    }
+
+    // Cause of the failure by shard
+    public Map<Integer, Throwable> getFailures() {
+        return failures;
+    }
+
+    public Set<Integer> getFailedShards() {
+        return failures.keySet();
+    }
+
+    public int getCommittedRows() {
+        return committedRows;
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.dao;
+
+import com.example.entity.Product;
+import com.example.util.HibernateUtil;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Product table spread over several independent databases ("shards"), each with its own
+ * SessionFactory and connection pool.
+ *
+ * Ids are range-partitioned: shard i draws ids from its own product_seq starting at
+ * i * 2^40 + 1, so the shard owning an id is id >> 40 and single-product reads, updates and
+ * deletes go to exactly one shard. New products are placed by a hash of their name, which
+ * also keeps names unique across shards and lets lookups by name go to one shard.
+ * Multi-product writes are grouped per shard and run in parallel, one transaction per
+ * shard; there is no cross-shard transaction, so a failure on one shard does not undo the
+ * others, and is raised as a ShardWriteException naming the failed shards once every shard
+ * has finished. page() queries all relevant shards in parallel and merges the results.
+ */
+public class ShardedProductDao implements AutoCloseable {
+
+    public static final int SHARD_ID_BITS = 40;
+    private static final int MAX_SHARDS = 1 << (Long.SIZE - 1 - SHARD_ID_BITS);
+
+    private final List<SessionFactory> shards;
+    private final List<ProductDao> shardDaos = new ArrayList<>();
+    private final boolean ownsShards;
+    private final ExecutorService executor;
+
+    // Shards the caller built and keeps ownership of. Their product tables must be empty or
+    // already hold ids in their own range only.
+    public ShardedProductDao(List<SessionFactory> shards) {
+        this(shards, false);
+    }
+
+    private ShardedProductDao(List<SessionFactory> shards, boolean ownsShards) {
+        if (shards.isEmpty() || shards.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("need 1 to " + MAX_SHARDS + " shards, got " + shards.size());
+        }
+        this.shards = List.copyOf(shards);
+        this.ownsShards = ownsShards;
+        for (int shard = 0; shard < this.shards.size(); shard++) {
+            reserveIdRange(shard);
+            shardDaos.add(new ProductDao(this.shards.get(shard)));
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.shards.size(), task -> {
+            Thread thread = new Thread(task, "product-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // shardCount in-memory H2 databases (inventory_shard_0, inventory_shard_1, ...)
+    public static ShardedProductDao inMemory(int shardCount) {
+        List<String> urls = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            urls.add("jdbc:h2:mem:inventory_shard_" + shard + ";DB_CLOSE_DELAY=-1;MODE=MySQL");
+        }
+        return open(urls);
+    }
+
+    // One shard per JDBC url, each configured from hibernate.cfg.xml with its own url and pool.
+    // The factories are built in parallel and closed together with the returned DAO.
+    public static ShardedProductDao open(List<String> jdbcUrls) {
+        List<CompletableFuture<SessionFactory>> builds = new ArrayList<>();
+        for (int shard = 0; shard < jdbcUrls.size(); shard++) {
+            Map<String, String> settings = Map.of(
+                    AvailableSettings.JAKARTA_JDBC_URL, jdbcUrls.get(shard),
+                    "hibernate.hikari.poolName", "inventory-pool-shard-" + shard,
+                    // JCache regions are shared by every factory using the same ehcache.xml,
+                    // and closing one factory would close them for all shards
+                    AvailableSettings.USE_SECOND_LEVEL_CACHE, "false",
+                    AvailableSettings.USE_QUERY_CACHE, "false");
+            builds.add(CompletableFuture.supplyAsync(() -> HibernateUtil.newSessionFactory(settings)));
+        }
+        List<SessionFactory> factories = new ArrayList<>();
+        RuntimeException failure = null;
+        for (CompletableFuture<SessionFactory> build : builds) {
+            try {
+                factories.add(build.join());
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            factories.forEach(SessionFactory::close);
+            throw failure;
+        }
+        return new ShardedProductDao(factories, true);
+    }
+
+    // Moves this shard's product_seq to the start of its id range, unless it is already there
+    private void reserveIdRange(int shard) {
+        SessionFactory factory = shards.get(shard);
+        String nextValue = factory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect()
+                .getSequenceSupport()
+                .getSequenceNextValString("product_seq");
+        try (StatelessSession session = factory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            // costs one unused id; the optimizer of this factory has not drawn from it yet
+            long next = ((Number) session.createNativeQuery(nextValue, Object.class).getSingleResult()).longValue();
+            long owner = next >>> SHARD_ID_BITS;
+            if (owner < shard) {
+                session.createNativeMutationQuery("alter sequence product_seq restart with " + firstId(shard))
+                        .executeUpdate();
+            } else if (owner > shard) {
+                transaction.rollback();
+                throw new IllegalStateException("product_seq of shard " + shard + " is at " + next
+                        + ", past the end of its id range");
+            }
+            transaction.commit();
+        }
+    }
+
+    static long firstId(int shard) {
+        return ((long) shard << SHARD_ID_BITS) + 1;
+    }
+
+    // Shard that owns id
+    public int shardOf(long id) {
+        long shard = id >>> SHARD_ID_BITS;
+        if (shard >= shards.size()) {
+            throw new IllegalArgumentException("id " + id + " does not belong to any of "
+                    + shards.size() + " shards");
+        }
+        return (int) shard;
+    }
+
+    // Shard a new product is stored on
+    int shardFor(Product product) {
+        return shardForName(product.getName());
+    }
+
+    private int shardForName(String name) {
+        return Math.floorMod(Objects.hashCode(name), shards.size());
+    }
+
+    private ProductDao daoFor(Long id) {
+        return shardDaos.get(shardOf(id));
+    }
+
+    public void saveProduct(Product product) {
+        shardDaos.get(shardFor(product)).saveProduct(product);
+    }
+
+    public BulkInsertResult saveProducts(List<Product> products) {
+        return saveProducts(products, HibernateUtil.getJdbcBatchSize(shards.get(0)));
+    }
+
+    // Inserts each shard's share of products in its own transaction, all shards in parallel.
+    // If a shard's transaction fails, throws a ShardWriteException with the failed shards and
+    // the rows the others committed.
+    public BulkInsertResult saveProducts(List<Product> products, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        long start = System.nanoTime();
+        List<List<Product>> perShard = partition(products, this::shardFor);
+        List<BulkInsertResult> results = scatter(perShard,
+                (dao, shardProducts) -> dao.insertProducts(shardProducts, batchSize), BulkInsertResult::getRows);
+        int saved = results.stream().mapToInt(BulkInsertResult::getRows).sum();
+        return new BulkInsertResult(saved, batchSize, System.nanoTime() - start);
+    }
+
+    public Product getProductById(Long id) {
+        return daoFor(id).getProductById(id);
+    }
+
+    // Names decide placement, so the one shard that can hold this name is asked
+    public Product getProductByName(String name) {
+        return shardDaos.get(shardForName(name)).getProductByName(name);
+    }
+
+    public void updateProductPrice(Long id, Double newPrice) {
+        daoFor(id).updateProductPrice(id, newPrice);
+    }
+
+    public void updateProductQuantity(Long id, Integer newQuantity) {
+        daoFor(id).updateProductQuantity(id, newQuantity);
+    }
+
+    public int updateProduct(Long id, Double newPrice, Integer newQuantity) {
+        return daoFor(id).updateProduct(id, newPrice, newQuantity);
+    }
+
+    public int adjustQuantity(Long id, int delta) {
+        return daoFor(id).adjustQuantity(id, delta);
+    }
+
+    // Same as ProductDao.adjustPrices, with each shard's ids updated in parallel; throws a
+    // ShardWriteException if some shards fail
+    public int adjustPrices(Collection<Long> ids, double percentChange) {
+        List<List<Long>> perShard = partition(ids, this::shardOf);
+        return scatter(perShard, (dao, shardIds) -> dao.adjustPrices(shardIds, percentChange), Integer::intValue)
+                .stream().mapToInt(Integer::intValue).sum();
+    }
+
+    public void deleteProductById(Long id) {
+        daoFor(id).deleteProductById(id);
+    }
+
+    // Up to limit products with id > afterId (null for the first page) in id order, across all
+    // shards. Every shard that can hold such ids is queried in parallel; because the shards'
+    // id ranges do not overlap, the merged result is their pages concatenated in shard order.
+    public List<Product> page(Long afterId, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive: " + limit);
+        }
+        int firstShard = afterId == null || afterId < 0 ? 0 : (int) Math.min(afterId >>> SHARD_ID_BITS, shards.size());
+        List<CompletableFuture<List<Product>>> pages = new ArrayList<>();
+        for (int shard = firstShard; shard < shards.size(); shard++) {
+            ProductDao dao = shardDaos.get(shard);
+            pages.add(CompletableFuture.supplyAsync(() -> dao.page(afterId, limit), executor));
+        }
+        List<Product> merged = new ArrayList<>(limit);
+        for (CompletableFuture<List<Product>> page : pages) {
+            for (Product product : page.join()) {
+                if (merged.size() == limit) {
+                    return merged;
+                }
+                merged.add(product);
+            }
+        }
+        return merged;
+    }
+
+    // Streams every product to action, shard by shard and so in id order, on the calling thread
+    public long forEachProduct(Consumer<Product> action) {
+        long visited = 0;
+        for (ProductDao dao : shardDaos) {
+            visited += dao.forEachProduct(action);
+        }
+        return visited;
+    }
+
+    private <T> List<List<T>> partition(Collection<T> items, Function<T, Integer> shardOf) {
+        List<List<T>> perShard = new ArrayList<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (T item : items) {
+            perShard.get(shardOf.apply(item)).add(item);
+        }
+        return perShard;
+    }
+
+    // Runs work for every shard with a non-empty share in parallel and waits for all of them.
+    // If any failed, throws a ShardWriteException with their causes and the rows (as counted
+    // by rows) written by the rest.
+    private <T, R> List<R> scatter(List<List<T>> perShard, ShardWork<T, R> work, ToIntFunction<R> rows) {
+        Map<Integer, CompletableFuture<R>> futures = new TreeMap<>();
+        for (int shard = 0; shard < perShard.size(); shard++) {
+            List<T> share = perShard.get(shard);
+            if (!share.isEmpty()) {
+                ProductDao dao = shardDaos.get(shard);
+                futures.put(shard, CompletableFuture.supplyAsync(() -> work.apply(dao, share), executor));
+            }
+        }
+        List<R> results = new ArrayList<>(futures.size());
+        Map<Integer, Throwable> failures = new TreeMap<>();
+        int committedRows = 0;
+        for (Map.Entry<Integer, CompletableFuture<R>> future : futures.entrySet()) {
+            try {
+                R result = future.getValue().join();
+                results.add(result);
+                committedRows += rows.applyAsInt(result);
+            } catch (CompletionException e) {
+                failures.put(future.getKey(), e.getCause());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new ShardWriteException(failures, committedRows);
+        }
+        return results;
+    }
+
+    private interface ShardWork<T, R> {
+        R apply(ProductDao dao, List<T> share);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public SessionFactory getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        if (ownsShards) {
+            shards.forEach(SessionFactory::close);
+        }
+    }
+}
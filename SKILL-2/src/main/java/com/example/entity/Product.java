@@ -1,14 +1,27 @@
 package com.example.entity;
 
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 
 @Entity
 @Table(name = "products")
+// Cached in the "com.example.entity.Product" region when the second-level cache is on.
+// READ_WRITE keeps the cache consistent with updates and deletes made through a Session.
+// Name to id resolutions are cached in "com.example.entity.Product##NaturalId".
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@NaturalIdCache
 public class Product {
 
     @Id
@@ -17,10 +30,16 @@ public class Product {
     // @GeneratedValue(strategy = GenerationType.AUTO)
     // @GeneratedValue(strategy = GenerationType.IDENTITY)
     // @GeneratedValue(strategy = GenerationType.SEQUENCE)
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    // A pooled sequence hands out allocationSize ids per round trip and keeps JDBC
+    // insert batching possible (IDENTITY would force one INSERT per statement).
+    // Keep allocationSize in line with hibernate.jdbc.batch_size.
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
+    // Natural id: unique and immutable, so lookups by name can be cached like lookups by id
+    @NaturalId
     @Column(name = "name", nullable = false, length = 100)
     private String name;
 
@@ -33,6 +52,11 @@ public class Product {
     @Column(name = "quantity", nullable = false)
     private Integer quantity;
 
+    // Optimistic locking: bumped on every update, a stale write fails instead of overwriting
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
+
     public Product() {
     }
 
@@ -83,6 +107,14 @@ public class Product {
         this.quantity = quantity;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Product{" +
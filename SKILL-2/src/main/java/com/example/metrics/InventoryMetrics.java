@@ -0,0 +1,148 @@
+package com.example.metrics;
+
+import com.example.util.HibernateUtil;
+import com.example.util.PoolMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide metrics for the inventory database.
+ *
+ * - latency histograms per ProductDao operation (recordOperation)
+ * - per-session statement, query, flush and entity-load counts (SessionMetricsListener)
+ * - JDBC statement latency, with statements slower than inventory.metrics.slow_query_ms
+ *   written as one JSON line each to the "com.example.slowquery" logger
+ *
+ * snapshot() renders all of it, plus Hibernate's Statistics and the pool metrics, as JSON.
+ */
+public final class InventoryMetrics {
+
+    public static final String SLOW_QUERY_THRESHOLD_MS = "inventory.metrics.slow_query_ms";
+
+    private static final Logger SLOW_QUERY_LOG = LoggerFactory.getLogger("com.example.slowquery");
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final Map<String, Histogram> OPERATIONS = new ConcurrentHashMap<>();
+    private static final Histogram STATEMENT_NANOS = new Histogram();
+    private static final Histogram STATEMENTS_PER_SESSION = new Histogram();
+    private static final Histogram QUERIES_PER_SESSION = new Histogram();
+    private static final Histogram FLUSHES_PER_SESSION = new Histogram();
+    private static final Histogram LOADS_PER_SESSION = new Histogram();
+    private static final LongAdder SLOW_STATEMENTS = new LongAdder();
+
+    private static volatile long slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private InventoryMetrics() {
+    }
+
+    public static void setSlowQueryThresholdMillis(long millis) {
+        slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    // Records the time since startNanos (a System.nanoTime() value) against operation
+    public static void recordOperation(String operation, long startNanos) {
+        OPERATIONS.computeIfAbsent(operation, name -> new Histogram())
+                .record(System.nanoTime() - startNanos);
+    }
+
+    static void recordStatement(String sql, long nanos) {
+        STATEMENT_NANOS.record(nanos);
+        if (nanos >= slowQueryThresholdNanos) {
+            SLOW_STATEMENTS.increment();
+            if (SLOW_QUERY_LOG.isWarnEnabled()) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("event", "slow_query");
+                entry.put("durationMs", nanos / NANOS_PER_MILLI);
+                entry.put("thresholdMs", slowQueryThresholdNanos / NANOS_PER_MILLI);
+                entry.put("thread", Thread.currentThread().getName());
+                entry.put("sql", sql);
+                SLOW_QUERY_LOG.warn(toJson(entry));
+            }
+        }
+    }
+
+    static void recordSession(int statements, int queries, int flushes, int entityLoads) {
+        STATEMENTS_PER_SESSION.record(statements);
+        QUERIES_PER_SESSION.record(queries);
+        FLUSHES_PER_SESSION.record(flushes);
+        LOADS_PER_SESSION.record(entityLoads);
+    }
+
+    public static Histogram getOperationHistogram(String operation) {
+        return OPERATIONS.get(operation);
+    }
+
+    // All metrics as a JSON document; latencies are in milliseconds
+    public static String snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+
+        Map<String, Object> operations = new TreeMap<>();
+        OPERATIONS.forEach((name, histogram) -> operations.put(name, histogram.summary(NANOS_PER_MILLI)));
+        snapshot.put("operationsMs", operations);
+
+        Map<String, Object> statements = new LinkedHashMap<>(STATEMENT_NANOS.summary(NANOS_PER_MILLI));
+        statements.put("slow", SLOW_STATEMENTS.sum());
+        statements.put("slowThresholdMs", slowQueryThresholdNanos / NANOS_PER_MILLI);
+        snapshot.put("statementsMs", statements);
+
+        Map<String, Object> perSession = new LinkedHashMap<>();
+        perSession.put("statements", STATEMENTS_PER_SESSION.summary(1));
+        perSession.put("queries", QUERIES_PER_SESSION.summary(1));
+        perSession.put("flushes", FLUSHES_PER_SESSION.summary(1));
+        perSession.put("entityLoads", LOADS_PER_SESSION.summary(1));
+        snapshot.put("perSession", perSession);
+
+        Statistics statistics = HibernateUtil.getStatistics();
+        if (statistics.isStatisticsEnabled()) {
+            Map<String, Object> hibernate = new LinkedHashMap<>();
+            hibernate.put("sessionsOpened", statistics.getSessionOpenCount());
+            hibernate.put("queries", statistics.getQueryExecutionCount());
+            hibernate.put("slowestQueryMs", statistics.getQueryExecutionMaxTime());
+            hibernate.put("slowestQuery", statistics.getQueryExecutionMaxTimeQueryString());
+            hibernate.put("entityLoads", statistics.getEntityLoadCount());
+            hibernate.put("entityInserts", statistics.getEntityInsertCount());
+            hibernate.put("entityUpdates", statistics.getEntityUpdateCount());
+            hibernate.put("entityDeletes", statistics.getEntityDeleteCount());
+            hibernate.put("flushes", statistics.getFlushCount());
+            hibernate.put("transactions", statistics.getTransactionCount());
+            hibernate.put("optimisticFailures", statistics.getOptimisticFailureCount());
+            hibernate.put("secondLevelCacheHits", statistics.getSecondLevelCacheHitCount());
+            hibernate.put("secondLevelCacheMisses", statistics.getSecondLevelCacheMissCount());
+            hibernate.put("queryCacheHits", statistics.getQueryCacheHitCount());
+            hibernate.put("queryCacheMisses", statistics.getQueryCacheMissCount());
+            snapshot.put("hibernate", hibernate);
+        }
+
+        PoolMetrics pool = HibernateUtil.getPoolMetrics();
+        if (pool != null) {
+            Map<String, Object> poolSnapshot = new LinkedHashMap<>();
+            poolSnapshot.put("active", pool.getActiveConnections());
+            poolSnapshot.put("idle", pool.getIdleConnections());
+            poolSnapshot.put("waiting", pool.getThreadsAwaitingConnection());
+            poolSnapshot.put("avgWaitMs", pool.getAverageWaitMillis());
+            poolSnapshot.put("maxWaitMs", pool.getMaxWaitMillis());
+            poolSnapshot.put("timeouts", pool.getTimeouts());
+            snapshot.put("pool", poolSnapshot);
+        }
+        return toJson(snapshot);
+    }
+
+    private static String toJson(Object value) {
+        try {
+            return JSON.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot render metrics as JSON", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.metrics;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+// Hooks entity-load counting into a SessionFactory and applies the slow-query threshold
+// from its settings. Registered by HibernateUtil when it builds the factory.
+public class MetricsIntegrator implements Integrator {
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext,
+                          SessionFactoryImplementor sessionFactory) {
+        Object threshold = sessionFactory.getProperties().get(InventoryMetrics.SLOW_QUERY_THRESHOLD_MS);
+        if (threshold != null) {
+            InventoryMetrics.setSlowQueryThresholdMillis(Long.parseLong(threshold.toString().trim()));
+        }
+        PostLoadEventListener countLoads = event -> SessionMetricsListener.entityLoaded();
+        sessionFactory.getServiceRegistry()
+                .getService(EventListenerRegistry.class)
+                .appendListeners(EventType.POST_LOAD, countLoads);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        // nothing to undo; the listener goes away with the factory
+    }
+}
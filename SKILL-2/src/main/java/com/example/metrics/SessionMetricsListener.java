@@ -0,0 +1,79 @@
+package com.example.metrics;
+
+import org.hibernate.SessionEventListener;
+
+import java.util.Locale;
+
+// Per-session counters: Hibernate creates one instance for every Session and
+// StatelessSession it opens (hibernate.session.events.auto) and calls end() on close.
+// Sessions here are opened and closed on the same thread, which lets the entity-load
+// hook find the current session's listener through a thread-local.
+public class SessionMetricsListener implements SessionEventListener {
+
+    private static final ThreadLocal<SessionMetricsListener> CURRENT = new ThreadLocal<>();
+
+    private final SessionMetricsListener enclosing;
+    private int statements;
+    private int queries;
+    private int flushes;
+    private int entityLoads;
+    private long statementStart;
+
+    public SessionMetricsListener() {
+        enclosing = CURRENT.get();
+        CURRENT.set(this);
+    }
+
+    static void entityLoaded() {
+        SessionMetricsListener current = CURRENT.get();
+        if (current != null) {
+            current.entityLoads++;
+        }
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        statementFinished();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        statementStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        statementFinished();
+    }
+
+    private void statementFinished() {
+        String sql = SqlCapturingStatementInspector.lastSql();
+        statements++;
+        if (sql != null && sql.stripLeading().toLowerCase(Locale.ROOT).startsWith("select")) {
+            queries++;
+        }
+        InventoryMetrics.recordStatement(sql, System.nanoTime() - statementStart);
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        flushes++;
+    }
+
+    @Override
+    public void end() {
+        InventoryMetrics.recordSession(statements, queries, flushes, entityLoads);
+        if (CURRENT.get() == this) {
+            if (enclosing == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(enclosing);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+// Remembers the SQL most recently prepared on each thread, so the statement timing in
+// SessionMetricsListener can name the statement in the slow-query log.
+// Configured through hibernate.session_factory.statement_inspector.
+public class SqlCapturingStatementInspector implements StatementInspector {
+
+    private static final ThreadLocal<String> LAST_SQL = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        LAST_SQL.set(sql);
+        return sql;
+    }
+
+    static String lastSql() {
+        return LAST_SQL.get();
+    }
+}
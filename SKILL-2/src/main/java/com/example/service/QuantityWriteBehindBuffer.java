@@ -0,0 +1,559 @@
+package com.example.service;
+
+import com.example.entity.Product;
+import com.example.metrics.InventoryMetrics;
+import com.example.util.CheckpointStore;
+import com.example.util.HibernateUtil;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Write-behind buffer for stock deltas (e.g. a point-of-sale feed).
+ *
+ * add() merges each delta into per-product running totals in memory, so a thousand
+ * "-1"s for the same product become one "quantity = quantity - 1000". Restocks and sales are
+ * totalled apart. The totals are written every flushInterval, or as soon as flushThreshold
+ * products are pending, in a single transaction of batched UPDATEs: the restocks first, then
+ * the sales, each sale left undone, like ProductDao.adjustQuantity, if it would take the
+ * quantity below zero. A total that updates nothing, a sale the stock cannot cover or any
+ * total for a product that no longer exists, is kept in the rejected_quantity_deltas table,
+ * written in the same transaction, and reported by getRejectedDeltas(). When capacity
+ * products are pending, add() blocks until a flush makes room.
+ *
+ * Every accepted delta is first appended to a journal segment in journalDirectory. A flush
+ * starts a new segment and records the number of the last segment it covers in
+ * CheckpointStore in the same transaction as the UPDATEs; on startup, segments after the
+ * checkpoint are replayed into the buffer. Deltas therefore survive a crash of the process;
+ * with syncEveryWrite they also survive a crash of the machine, at the cost of an fsync
+ * per delta.
+ */
+public class QuantityWriteBehindBuffer implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+    public static final int DEFAULT_FLUSH_THRESHOLD = 1_000;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(200);
+
+    private static final Logger LOG = LoggerFactory.getLogger(QuantityWriteBehindBuffer.class);
+
+    private static final String RESTOCK_SQL =
+            "update products set quantity = quantity + ?, version = version + 1 where id = ?";
+    private static final String SALE_SQL =
+            "update products set quantity = quantity + ?, version = version + 1 where id = ? and quantity + ? >= 0";
+    private static final String REJECTED_SQL =
+            "insert into rejected_quantity_deltas (buffer, product_id, delta) values (?, ?, ?)";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    // product id (8 bytes) + delta (4 bytes)
+    private static final int RECORD_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final SessionFactory sessionFactory;
+    private final Path journalDirectory;
+    private final String checkpointName;
+    private final int capacity;
+    private final int flushThreshold;
+    private final boolean syncEveryWrite;
+    private final ScheduledExecutorService flusher;
+
+    // A product's pending restocks and sales. Kept apart, so that a sale the stock cannot
+    // cover is rejected alone and never takes a restock down with it.
+    private static final class Totals {
+        long restocks; // >= 0
+        long sales; // <= 0
+
+        void add(long delta) {
+            if (delta > 0) {
+                restocks += delta;
+            } else {
+                sales += delta;
+            }
+        }
+
+        void addAll(Totals other) {
+            restocks += other.restocks;
+            sales += other.sales;
+        }
+    }
+
+    // A flushed total that updated no row
+    private static final class Rejected {
+        final long productId;
+        final long delta;
+
+        Rejected(long productId, long delta) {
+            this.productId = productId;
+            this.delta = delta;
+        }
+    }
+
+    // guards pending, journal and currentSegment
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    // only one flush writes to the database at a time
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+
+    private Map<Long, Totals> pending = new HashMap<>();
+    private FileChannel journal;
+    private long currentSegment;
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final AtomicLong acceptedDeltas = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedProducts = new AtomicLong();
+    private final AtomicLong updatedRows = new AtomicLong();
+    private final AtomicLong rejectedTotals = new AtomicLong();
+
+    public QuantityWriteBehindBuffer(Path journalDirectory) {
+        this(HibernateUtil.getSessionFactory(), journalDirectory);
+    }
+
+    // Writes to the given factory's database instead of HibernateUtil's, e.g. a
+    // ProductDao's (getSessionFactory()) or one shard's
+    public QuantityWriteBehindBuffer(SessionFactory sessionFactory, Path journalDirectory) {
+        this(sessionFactory, journalDirectory, DEFAULT_CAPACITY, DEFAULT_FLUSH_THRESHOLD, DEFAULT_FLUSH_INTERVAL, false);
+    }
+
+    public QuantityWriteBehindBuffer(SessionFactory sessionFactory, Path journalDirectory, int capacity,
+                                     int flushThreshold, Duration flushInterval, boolean syncEveryWrite) {
+        if (capacity < 1 || flushThreshold < 1 || flushThreshold > capacity) {
+            throw new IllegalArgumentException("need 0 < flushThreshold <= capacity, got "
+                    + flushThreshold + " and " + capacity);
+        }
+        if (flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("flushInterval must be positive: " + flushInterval);
+        }
+        this.sessionFactory = sessionFactory;
+        this.journalDirectory = journalDirectory.toAbsolutePath().normalize();
+        this.checkpointName = "quantity-write-behind:" + this.journalDirectory;
+        this.capacity = capacity;
+        this.flushThreshold = flushThreshold;
+        this.syncEveryWrite = syncEveryWrite;
+
+        recover();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "quantity-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // Replays journal segments that no committed flush covers, then opens a fresh segment
+    private void recover() {
+        long applied;
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            CheckpointStore.createTableIfMissing(session);
+            session.createNativeMutationQuery(
+                    "create table if not exists rejected_quantity_deltas (" +
+                            "id bigint auto_increment primary key, " +
+                            "buffer varchar(512) not null, " +
+                            "product_id bigint not null, " +
+                            "delta bigint not null, " +
+                            "rejected_at timestamp default current_timestamp not null)")
+                    .executeUpdate();
+            applied = CheckpointStore.read(session, checkpointName);
+            transaction.commit();
+        }
+
+        try {
+            Files.createDirectories(journalDirectory);
+            TreeMap<Long, Path> segments = listSegments();
+            long replayed = 0;
+            for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+                if (segment.getKey() <= applied) {
+                    Files.delete(segment.getValue());
+                } else {
+                    replayed += replay(segment.getValue());
+                }
+            }
+            if (replayed > 0) {
+                LOG.info("Replayed {} unflushed quantity deltas for {} products from {}",
+                        replayed, pending.size(), journalDirectory);
+            }
+            long last = segments.isEmpty() ? applied : Math.max(applied, segments.lastKey());
+            currentSegment = last + 1;
+            journal = openSegment(currentSegment);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover write-behind journal in " + journalDirectory, e);
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (var files = Files.list(journalDirectory)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    // A crash can leave a partial record at the end of the last segment; it is ignored,
+    // since add() had not returned for it
+    private long replay(Path segment) throws IOException {
+        long records = 0;
+        try (InputStream file = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                long productId = in.readLong();
+                int delta = in.readInt();
+                pending.computeIfAbsent(productId, id -> new Totals()).add(delta);
+                records++;
+            }
+        } catch (EOFException endOfSegment) {
+            return records;
+        }
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(journalDirectory.resolve(String.format("segment-%012d.log", segment)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // Queues delta for productId, waiting while the buffer is full
+    public void add(long productId, int delta) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (!closed && isFull(productId)) {
+                notFull.await();
+            }
+            accept(productId, delta);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Like add(), but gives up and returns false if the buffer is still full after timeout
+    public boolean offer(long productId, int delta, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!closed && isFull(productId)) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            accept(productId, delta);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A product that already has a pending total never needs a new slot
+    private boolean isFull(long productId) {
+        return pending.size() >= capacity && !pending.containsKey(productId);
+    }
+
+    private void accept(long productId, int delta) {
+        if (closed) {
+            throw new IllegalStateException("Write-behind buffer is closed");
+        }
+        if (delta == 0) {
+            return;
+        }
+        record.clear();
+        record.putLong(productId).putInt(delta).flip();
+        try {
+            while (record.hasRemaining()) {
+                journal.write(record);
+            }
+            if (syncEveryWrite) {
+                journal.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot journal quantity delta", e);
+        }
+        pending.computeIfAbsent(productId, id -> new Totals()).add(delta);
+        acceptedDeltas.incrementAndGet();
+        if (pending.size() >= flushThreshold && !flushRequested) {
+            flushRequested = true;
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    // Writes every pending total to the database now; returns the number of row updates (a
+    // product with both restocks and sales counts twice). Totals that update nothing are
+    // kept as rejected deltas.
+    public int flush() {
+        flushLock.lock();
+        try {
+            long start = System.nanoTime();
+            Map<Long, Totals> batch;
+            long segment;
+            lock.lock();
+            try {
+                flushRequested = false;
+                if (pending.isEmpty()) {
+                    return 0;
+                }
+                // new deltas go to the next segment; this flush covers everything up to segment
+                FileChannel next = openSegment(currentSegment + 1);
+                journal.close();
+                journal = next;
+                segment = currentSegment++;
+                batch = pending;
+                pending = new HashMap<>();
+                notFull.signalAll();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot start a new journal segment", e);
+            } finally {
+                lock.unlock();
+            }
+
+            int updated;
+            List<Rejected> rejected = new ArrayList<>();
+            try {
+                updated = write(batch, segment, rejected);
+            } catch (RuntimeException e) {
+                // keep the totals for the next flush; their journal segments are still on disk
+                lock.lock();
+                try {
+                    batch.forEach((productId, totals) -> pending.computeIfAbsent(productId, id -> new Totals()).addAll(totals));
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+
+            deleteSegmentsUpTo(segment);
+            if (HibernateUtil.isSecondLevelCacheEnabled(sessionFactory)) {
+                batch.keySet().forEach(productId -> sessionFactory.getCache().evictEntityData(Product.class, productId));
+            }
+            flushes.incrementAndGet();
+            flushedProducts.addAndGet(batch.size());
+            updatedRows.addAndGet(updated);
+            if (!rejected.isEmpty()) {
+                rejectedTotals.addAndGet(rejected.size());
+                LOG.warn("{} quantity totals updated no row and were kept in rejected_quantity_deltas, "
+                        + "e.g. {} for product {}", rejected.size(), rejected.get(0).delta, rejected.get(0).productId);
+            }
+            InventoryMetrics.recordOperation("writeBehindFlush", start);
+            return updated;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // Applies batch and records the checkpoint in one transaction; the totals that updated no
+    // row are added to rejected and to rejected_quantity_deltas
+    private int write(Map<Long, Totals> batch, long segment, List<Rejected> rejected) {
+        int batchSize = HibernateUtil.getJdbcBatchSize(sessionFactory);
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                int updated = session.doReturningWork(connection -> {
+                    // restocks first, so that the sales flushed with them can use them
+                    int rows = update(connection, RESTOCK_SQL, batch, true, batchSize, rejected);
+                    rows += update(connection, SALE_SQL, batch, false, batchSize, rejected);
+                    if (!rejected.isEmpty()) {
+                        try (PreparedStatement statement = connection.prepareStatement(REJECTED_SQL)) {
+                            for (Rejected total : rejected) {
+                                statement.setString(1, checkpointName);
+                                statement.setLong(2, total.productId);
+                                statement.setLong(3, total.delta);
+                                statement.addBatch();
+                            }
+                            statement.executeBatch();
+                        }
+                    }
+                    return rows;
+                });
+                CheckpointStore.save(session, checkpointName, segment);
+                transaction.commit();
+                return updated;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Runs sql for the restock (or sale) total of every product in batch that has one, in JDBC
+    // batches of batchSize; returns the rows updated and adds the totals that updated none
+    // to rejected
+    private static int update(Connection connection, String sql, Map<Long, Totals> batch, boolean restocks,
+                              int batchSize, List<Rejected> rejected) throws SQLException {
+        int rows = 0;
+        List<Rejected> batched = new ArrayList<>(batchSize);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Map.Entry<Long, Totals> entry : batch.entrySet()) {
+                long delta = restocks ? entry.getValue().restocks : entry.getValue().sales;
+                if (delta == 0) {
+                    continue;
+                }
+                statement.setLong(1, delta);
+                statement.setLong(2, entry.getKey());
+                if (!restocks) {
+                    statement.setLong(3, delta);
+                }
+                statement.addBatch();
+                batched.add(new Rejected(entry.getKey(), delta));
+                if (batched.size() == batchSize) {
+                    rows += execute(statement, batched, rejected);
+                }
+            }
+            if (!batched.isEmpty()) {
+                rows += execute(statement, batched, rejected);
+            }
+        }
+        return rows;
+    }
+
+    private static int execute(PreparedStatement statement, List<Rejected> batched, List<Rejected> rejected)
+            throws SQLException {
+        int[] updateCounts = statement.executeBatch();
+        int rows = 0;
+        for (int i = 0; i < updateCounts.length; i++) {
+            // a driver that cannot tell (SUCCESS_NO_INFO) is taken at its word
+            if (updateCounts[i] == 0) {
+                rejected.add(batched.get(i));
+            } else {
+                rows++;
+            }
+        }
+        batched.clear();
+        return rows;
+    }
+
+    private void deleteSegmentsUpTo(long segment) {
+        try {
+            List<Path> applied = new ArrayList<>(listSegments().headMap(segment, true).values());
+            for (Path file : applied) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // harmless: recovery skips segments at or below the checkpoint and deletes them
+            LOG.warn("Cannot delete applied journal segments in {}: {}", journalDirectory, e.toString());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            // the totals stay pending and the next flush tries again
+            LOG.error("Write-behind flush to the database failed", e);
+        }
+    }
+
+    // Products with a pending total
+    public int getPendingProducts() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAcceptedDeltas() {
+        return acceptedDeltas.get();
+    }
+
+    public long getFlushes() {
+        return flushes.get();
+    }
+
+    public long getFlushedProducts() {
+        return flushedProducts.get();
+    }
+
+    public long getUpdatedRows() {
+        return updatedRows.get();
+    }
+
+    // Flushed totals that updated nothing (the product was gone or short of stock), each kept
+    // in rejected_quantity_deltas
+    public long getRejectedTotals() {
+        return rejectedTotals.get();
+    }
+
+    // Sum of the rejected deltas of this buffer (its journal directory) by product id, from
+    // rejected_quantity_deltas: stock changes that were never applied and need a decision
+    public Map<Long, Long> getRejectedDeltas() {
+        try (Session session = sessionFactory.openSession()) {
+            Map<Long, Long> deltas = new TreeMap<>();
+            session.createNativeQuery("select product_id, sum(delta) from rejected_quantity_deltas "
+                            + "where buffer = :buffer group by product_id", Object[].class)
+                    .setParameter("buffer", checkpointName)
+                    .getResultList()
+                    .forEach(row -> deltas.put(((Number) row[0]).longValue(), ((Number) row[1]).longValue()));
+            return deltas;
+        }
+    }
+
+    // Stops the timer, flushes what is left and closes the journal
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            lock.lock();
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.warn("Cannot close write-behind journal in {}: {}", journalDirectory, e.toString());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.service;
+
+import com.example.dao.ProductDao;
+import com.example.entity.Product;
+import jakarta.persistence.OptimisticLockException;
+import org.hibernate.Session;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reserves and releases product stock without overselling under concurrency.
+ *
+ * reserve() reads the product, checks stock and writes the new quantity under
+ * Product's @Version check. When another writer got there first the attempt is retried
+ * with exponential backoff and jitter, up to maxAttempts. After that, and always for
+ * products marked hot, it falls back to a single conditional
+ * "UPDATE ... SET quantity = quantity - ? WHERE quantity >= ?", which lets the database
+ * serialize the writers instead of retrying.
+ */
+public class StockReservationService {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final long DEFAULT_BASE_BACKOFF_MICROS = 200;
+    private static final long MAX_BACKOFF_MICROS = 20_000;
+
+    private enum Attempt {
+        RESERVED, INSUFFICIENT, CONFLICT
+    }
+
+    private final ProductDao productDao;
+    private final int maxAttempts;
+    private final long baseBackoffMicros;
+    private final Set<Long> hotProductIds = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder optimisticReservations = new LongAdder();
+    private final LongAdder conditionalReservations = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    public StockReservationService(ProductDao productDao) {
+        this(productDao, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF_MICROS);
+    }
+
+    public StockReservationService(ProductDao productDao, int maxAttempts, long baseBackoffMicros) {
+        if (maxAttempts < 1 || baseBackoffMicros < 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive and backoff non-negative");
+        }
+        this.productDao = productDao;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMicros = baseBackoffMicros;
+    }
+
+    // Hot products skip the optimistic path and always use the conditional UPDATE
+    public void markHot(Long productId) {
+        hotProductIds.add(productId);
+    }
+
+    public void unmarkHot(Long productId) {
+        hotProductIds.remove(productId);
+    }
+
+    // Takes quantity units out of stock. Returns false if the product does not exist
+    // or has fewer than quantity units left; stock never goes below zero.
+    public boolean reserve(Long productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+        if (!hotProductIds.contains(productId)) {
+            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+                switch (tryOptimisticReserve(productId, quantity)) {
+                    case RESERVED:
+                        optimisticReservations.increment();
+                        return true;
+                    case INSUFFICIENT:
+                        return false;
+                    default:
+                        conflicts.increment();
+                        if (attempt < maxAttempts) {
+                            backoff(attempt);
+                        }
+                }
+            }
+        }
+        return reserveConditionally(productId, quantity);
+    }
+
+    // Puts quantity units back. Increments cannot oversell, so this is always a single
+    // conditional UPDATE; it still bumps the version so optimistic readers notice.
+    public boolean release(Long productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive: " + quantity);
+        }
+        return productDao.adjustQuantity(productId, quantity) == 1;
+    }
+
+    private Attempt tryOptimisticReserve(Long productId, int quantity) {
+        // the DAO's own database, which need not be HibernateUtil's (e.g. one shard of several)
+        try (Session session = productDao.getSessionFactory().openSession()) {
+            // a single UPDATE: skip JDBC batching so a version conflict surfaces directly
+            session.setJdbcBatchSize(1);
+            Transaction transaction = session.beginTransaction();
+            try {
+                Product product = session.get(Product.class, productId);
+                if (product == null || product.getQuantity() < quantity) {
+                    transaction.rollback();
+                    return Attempt.INSUFFICIENT;
+                }
+                product.setQuantity(product.getQuantity() - quantity);
+                // flush runs "update ... where id = ? and version = ?"
+                transaction.commit();
+                return Attempt.RESERVED;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                if (isOptimisticLockFailure(e)) {
+                    return Attempt.CONFLICT;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private boolean reserveConditionally(Long productId, int quantity) {
+        boolean reserved = productDao.adjustQuantity(productId, -quantity) == 1;
+        if (reserved) {
+            conditionalReservations.increment();
+        }
+        return reserved;
+    }
+
+    private static boolean isOptimisticLockFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Exponential backoff with full jitter: sleep a random time up to base * 2^(attempt - 1)
+    private void backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MICROS, baseBackoffMicros << Math.min(attempt - 1, 16));
+        if (ceiling > 0) {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(ceiling + 1) * 1_000);
+        }
+    }
+
+    public long getOptimisticReservations() {
+        return optimisticReservations.sum();
+    }
+
+    public long getConditionalReservations() {
+        return conditionalReservations.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+}
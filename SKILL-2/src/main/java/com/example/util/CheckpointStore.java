@@ -0,0 +1,43 @@
+package com.example.util;
+
+import org.hibernate.SharedSessionContract;
+
+// Named positions kept in the database so long-running jobs can resume after a crash.
+// Writes go through the caller's session, so a checkpoint commits (or rolls back)
+// atomically with the work it describes.
+public final class CheckpointStore {
+
+    private CheckpointStore() {
+    }
+
+    public static void createTableIfMissing(SharedSessionContract session) {
+        session.createNativeMutationQuery(
+                "create table if not exists job_checkpoints (" +
+                        "name varchar(512) not null primary key, " +
+                        "position bigint not null)")
+                .executeUpdate();
+    }
+
+    // Last saved position for name, or -1 if nothing was saved yet
+    public static long read(SharedSessionContract session, String name) {
+        Long position = session.createNativeQuery(
+                        "select position from job_checkpoints where name = :name", Long.class)
+                .setParameter("name", name)
+                .uniqueResult();
+        return position == null ? -1 : position;
+    }
+
+    public static void save(SharedSessionContract session, String name, long position) {
+        session.createNativeMutationQuery(
+                        "merge into job_checkpoints (name, position) key (name) values (:name, :position)")
+                .setParameter("name", name)
+                .setParameter("position", position)
+                .executeUpdate();
+    }
+
+    public static void clear(SharedSessionContract session, String name) {
+        session.createNativeMutationQuery("delete from job_checkpoints where name = :name")
+                .setParameter("name", name)
+                .executeUpdate();
+    }
+}
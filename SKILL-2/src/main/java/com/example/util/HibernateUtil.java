@@ -1,27 +1,154 @@
 package com.example.util;
 
+import com.example.entity.Product;
 import org.hibernate.SessionFactory;
-import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class HibernateUtil {
 
-    private static final SessionFactory sessionFactory = buildSessionFactory();
+    // Built on first use, or in the background after initializeAsync()
+    private static volatile CompletableFuture<SessionFactory> sessionFactory;
+    private static volatile Map<String, Long> bootstrapTimings = Map.of();
 
     private static SessionFactory buildSessionFactory() {
         try {
-            // Create the SessionFactory from hibernate.cfg.xml
-            return new Configuration().configure().buildSessionFactory();
+            // Create the SessionFactory from hibernate.cfg.xml, with the metrics hooks registered
+            SessionFactoryBootstrap bootstrap = SessionFactoryBootstrap.run(systemPropertyOverrides());
+            bootstrapTimings = Map.copyOf(bootstrap.getTimings());
+            return bootstrap.getSessionFactory();
         } catch (Throwable ex) {
             System.err.println("Initial SessionFactory creation failed." + ex);
             throw new ExceptionInInitializerError(ex);
         }
     }
 
+    // -Dhibernate.* and -Dinventory.* system properties win over hibernate.cfg.xml, e.g.
+    // -Dhibernate.connection.url=jdbc:h2:./data/inventory_db to use a file database
+    private static Map<String, String> systemPropertyOverrides() {
+        Map<String, String> overrides = new HashMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("hibernate.") || name.startsWith("inventory.")) {
+                overrides.put(name, System.getProperty(name));
+            }
+        }
+        return overrides;
+    }
+
+    // Starts building the SessionFactory on a background thread and returns at once;
+    // getSessionFactory() then only blocks if it is called before the build finishes.
+    // Does nothing if the build has already started.
+    public static CompletableFuture<SessionFactory> initializeAsync() {
+        return bootstrap(true);
+    }
+
     public static SessionFactory getSessionFactory() {
+        CompletableFuture<SessionFactory> future = sessionFactory;
+        if (future == null) {
+            future = bootstrap(false);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // rethrow the original ExceptionInInitializerError from a failed build
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static synchronized CompletableFuture<SessionFactory> bootstrap(boolean background) {
+        if (sessionFactory == null) {
+            CompletableFuture<SessionFactory> future = new CompletableFuture<>();
+            Runnable build = () -> {
+                try {
+                    future.complete(buildSessionFactory());
+                } catch (Throwable ex) {
+                    future.completeExceptionally(ex);
+                }
+            };
+            if (background) {
+                Thread thread = new Thread(build, "session-factory-bootstrap");
+                thread.setDaemon(true);
+                thread.start();
+            } else {
+                build.run();
+            }
+            sessionFactory = future;
+        }
         return sessionFactory;
     }
 
+    // Builds an additional SessionFactory from hibernate.cfg.xml, with settings applied on top
+    // of the -D overrides (e.g. a different hibernate.connection.url). The caller closes it.
+    public static SessionFactory newSessionFactory(Map<String, String> settings) {
+        Map<String, String> overrides = systemPropertyOverrides();
+        overrides.putAll(settings);
+        return SessionFactoryBootstrap.run(overrides).getSessionFactory();
+    }
+
+    // Milliseconds spent in each bootstrap phase (registry, metadata, sessionFactory, schema, total)
+    public static Map<String, Long> getBootstrapTimings() {
+        return bootstrapTimings;
+    }
+
+    // JDBC batch size configured in hibernate.cfg.xml (1 means batching is off)
+    public static int getJdbcBatchSize() {
+        return getJdbcBatchSize(getSessionFactory());
+    }
+
+    public static int getJdbcBatchSize(SessionFactory factory) {
+        Object value = factory.getProperties().get(AvailableSettings.STATEMENT_BATCH_SIZE);
+        if (value == null) {
+            return 1;
+        }
+        return Math.max(1, Integer.parseInt(value.toString().trim()));
+    }
+
+    // Connection pool gauges and wait times, or null if the pool is not in use
+    public static PoolMetrics getPoolMetrics() {
+        ConnectionProvider provider = getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider == null || !provider.isUnwrappableAs(PooledConnectionProvider.class)) {
+            return null;
+        }
+        return provider.unwrap(PooledConnectionProvider.class).getMetrics();
+    }
+
+    public static boolean isSecondLevelCacheEnabled() {
+        return isSecondLevelCacheEnabled(getSessionFactory());
+    }
+
+    public static boolean isSecondLevelCacheEnabled(SessionFactory factory) {
+        return factory.unwrap(SessionFactoryImplementor.class).getSessionFactoryOptions().isSecondLevelCacheEnabled();
+    }
+
+    // Hit/miss/put counts for the Product entity region, or null when the cache is off
+    public static CacheRegionStatistics getProductCacheStatistics() {
+        if (!isSecondLevelCacheEnabled()) {
+            return null;
+        }
+        return getStatistics().getDomainDataRegionStatistics(Product.class.getName());
+    }
+
+    // Query cache hit/miss counts are on Statistics#getQueryCacheHitCount and friends
+    public static Statistics getStatistics() {
+        return getSessionFactory().getStatistics();
+    }
+
     public static void shutdown() {
-        getSessionFactory().close();
+        if (sessionFactory != null) {
+            getSessionFactory().close();
+        }
     }
 }
@@ -0,0 +1,113 @@
+package com.example.util;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Live pool gauges (from HikariCP's MXBean) plus connection wait-time counters
+// recorded by HikariCP through the MetricsTrackerFactory hook
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final LongAccumulator maxAcquireNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder connectionsCreated = new LongAdder();
+
+    private volatile HikariPoolMXBean pool;
+    private volatile int maximumPoolSize;
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+                connectionsCreated.increment();
+            }
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquisitions.increment();
+                acquireNanos.add(elapsedAcquiredNanos);
+                maxAcquireNanos.accumulate(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    void bind(HikariPoolMXBean pool, int maximumPoolSize) {
+        this.pool = pool;
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public int getActiveConnections() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getIdleConnections();
+    }
+
+    public int getTotalConnections() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getTotalConnections();
+    }
+
+    // Threads currently blocked waiting for a connection
+    public int getThreadsAwaitingConnection() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getThreadsAwaitingConnection();
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public double getAverageWaitMillis() {
+        long count = acquisitions.sum();
+        return count == 0 ? 0.0 : acquireNanos.sum() / (double) count / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return maxAcquireNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getConnectionsCreated() {
+        return connectionsCreated.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{" +
+                "active=" + getActiveConnections() +
+                ", idle=" + getIdleConnections() +
+                ", total=" + getTotalConnections() +
+                ", max=" + maximumPoolSize +
+                ", waiting=" + getThreadsAwaitingConnection() +
+                ", acquisitions=" + getAcquisitions() +
+                ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis()) +
+                ", maxWaitMs=" + String.format("%.3f", getMaxWaitMillis()) +
+                ", timeouts=" + getTimeouts() +
+                ", created=" + getConnectionsCreated() +
+                '}';
+    }
+}
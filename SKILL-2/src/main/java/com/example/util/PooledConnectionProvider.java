@@ -0,0 +1,142 @@
+package com.example.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Hibernate ConnectionProvider backed by a HikariCP pool.
+ *
+ * The JDBC url, driver and credentials come from the jakarta.persistence.jdbc.* settings, or
+ * failing those the legacy hibernate.connection.* ones that hibernate.cfg.xml uses;
+ * every hibernate.hikari.* setting is handed to HikariConfig with the prefix removed
+ * (e.g. hibernate.hikari.maximumPoolSize). With inventory.pool.warmup=true the pool opens
+ * minimumIdle connections while the SessionFactory is built instead of on first use.
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+
+    public static final String WARMUP = "inventory.pool.warmup";
+    private static final String HIKARI_PREFIX = "hibernate.hikari.";
+
+    private HikariDataSource dataSource;
+    private final PoolMetrics metrics = new PoolMetrics();
+
+    @Override
+    public void configure(Map<String, Object> settings) {
+        Properties hikariProperties = new Properties();
+        for (Map.Entry<String, Object> entry : settings.entrySet()) {
+            if (entry.getKey().startsWith(HIKARI_PREFIX) && entry.getValue() != null) {
+                hikariProperties.setProperty(entry.getKey().substring(HIKARI_PREFIX.length()),
+                        entry.getValue().toString());
+            }
+        }
+
+        HikariConfig config = new HikariConfig(hikariProperties);
+        config.setJdbcUrl(setting(settings, AvailableSettings.JAKARTA_JDBC_URL, "hibernate.connection.url"));
+        String driver = setting(settings, AvailableSettings.JAKARTA_JDBC_DRIVER, "hibernate.connection.driver_class");
+        if (driver != null) {
+            config.setDriverClassName(driver);
+        }
+        config.setUsername(setting(settings, AvailableSettings.JAKARTA_JDBC_USER, "hibernate.connection.username"));
+        config.setPassword(setting(settings, AvailableSettings.JAKARTA_JDBC_PASSWORD, "hibernate.connection.password"));
+        // Hibernate manages transactions itself; see hibernate.connection.provider_disables_autocommit
+        config.setAutoCommit(false);
+        config.setMetricsTrackerFactory(metrics);
+
+        dataSource = new HikariDataSource(config);
+        metrics.bind(dataSource.getHikariPoolMXBean(), config.getMaximumPoolSize());
+
+        if (Boolean.parseBoolean(setting(settings, WARMUP))) {
+            warmUp(config.getMinimumIdle());
+        }
+    }
+
+    private static String setting(Map<String, Object> settings, String name) {
+        Object value = settings.get(name);
+        return value == null ? null : value.toString();
+    }
+
+    // The setting under name, or if that is missing under its legacy (deprecated) name
+    private static String setting(Map<String, Object> settings, String name, String legacyName) {
+        String value = setting(settings, name);
+        return value != null ? value : setting(settings, legacyName);
+    }
+
+    // Check out (and so physically open) `connections` connections at once, then return them
+    private void warmUp(int connections) {
+        long start = System.nanoTime();
+        List<Connection> borrowed = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                borrowed.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            System.err.println("Connection pool warm-up stopped early: " + e.getMessage());
+        } finally {
+            for (Connection connection : borrowed) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                    // the pool evicts broken connections on its own
+                }
+            }
+        }
+        System.out.println("Connection pool warmed up: " + borrowed.size() + " connections in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    public boolean isUnwrappableAs(Class<?> unwrapType) {
+        return unwrapType.isAssignableFrom(PooledConnectionProvider.class)
+                || unwrapType.isAssignableFrom(HikariDataSource.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (unwrapType.isAssignableFrom(PooledConnectionProvider.class)) {
+            return (T) this;
+        }
+        if (unwrapType.isAssignableFrom(HikariDataSource.class)) {
+            return (T) dataSource;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.util;
+
+import com.example.metrics.MetricsIntegrator;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.Version;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.boot.registry.BootstrapServiceRegistry;
+import org.hibernate.boot.registry.BootstrapServiceRegistryBuilder;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.mapping.Column;
+import org.hibernate.mapping.Table;
+import org.hibernate.tool.schema.Action;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Builds the SessionFactory in separately timed phases: service registry (hibernate.cfg.xml
+ * plus -D overrides), mapping metadata, the SessionFactory itself (including the connection
+ * pool) and the schema step.
+ *
+ * For hibernate.hbm2ddl.auto = update or validate the schema step runs here, after the
+ * factory is built, instead of inside Hibernate. With inventory.schema.skip_unchanged=true
+ * a fingerprint of the mapped tables and sequences is kept in job_checkpoints; when the
+ * mapping has not changed since the last successful update, the update (which reads the
+ * whole database catalog to diff it) is skipped. "none" skips the schema step entirely.
+ */
+final class SessionFactoryBootstrap {
+
+    static final String SKIP_UNCHANGED_SCHEMA = "inventory.schema.skip_unchanged";
+    private static final String SCHEMA_CHECKPOINT = "schema-fingerprint";
+
+    private final Map<String, Long> timings = new LinkedHashMap<>();
+    private long phaseStart;
+    private SessionFactory sessionFactory;
+    private String schemaOutcome;
+
+    private SessionFactoryBootstrap() {
+    }
+
+    static SessionFactoryBootstrap run(Map<String, String> overrides) {
+        SessionFactoryBootstrap bootstrap = new SessionFactoryBootstrap();
+        bootstrap.build(overrides);
+        return bootstrap;
+    }
+
+    private void build(Map<String, String> overrides) {
+        long start = System.nanoTime();
+        phaseStart = start;
+
+        BootstrapServiceRegistry bootstrapRegistry = new BootstrapServiceRegistryBuilder()
+                .applyIntegrator(new MetricsIntegrator())
+                .build();
+        StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder(bootstrapRegistry)
+                .configure();
+        overrides.forEach(registryBuilder::applySetting);
+        Map<String, Object> settings = registryBuilder.getSettings();
+        String schemaAction = String.valueOf(settings.getOrDefault(AvailableSettings.HBM2DDL_AUTO, "none"))
+                .trim().toLowerCase(Locale.ROOT);
+        boolean skipUnchanged = Boolean.parseBoolean(String.valueOf(settings.get(SKIP_UNCHANGED_SCHEMA)));
+        boolean managedHere = schemaAction.equals("update") || schemaAction.equals("validate");
+        if (managedHere) {
+            registryBuilder.applySetting(AvailableSettings.HBM2DDL_AUTO, "none");
+        }
+        StandardServiceRegistry registry = registryBuilder.build();
+        phase("registry");
+
+        try {
+            Metadata metadata = new MetadataSources(registry).buildMetadata();
+            phase("metadata");
+
+            sessionFactory = metadata.buildSessionFactory();
+            phase("sessionFactory");
+
+            if (managedHere) {
+                schemaOutcome = applySchema(metadata, schemaAction, skipUnchanged);
+            } else {
+                schemaOutcome = schemaAction.equals("none") ? "none" : schemaAction + " (by Hibernate)";
+            }
+            phase("schema");
+        } catch (RuntimeException e) {
+            if (sessionFactory != null) {
+                sessionFactory.close();
+            }
+            StandardServiceRegistryBuilder.destroy(registry);
+            throw e;
+        }
+
+        timings.put("total", (System.nanoTime() - start) / 1_000_000);
+        System.out.println("SessionFactory ready: " + describeTimings() + ", schema " + schemaOutcome);
+    }
+
+    private void phase(String name) {
+        long now = System.nanoTime();
+        timings.put(name, (now - phaseStart) / 1_000_000);
+        phaseStart = now;
+    }
+
+    private String applySchema(Metadata metadata, String schemaAction, boolean skipUnchanged) {
+        if (schemaAction.equals("validate")) {
+            runSchemaTool(metadata, Action.VALIDATE);
+            return "validated";
+        }
+        if (!skipUnchanged) {
+            runSchemaTool(metadata, Action.UPDATE);
+            return "updated";
+        }
+
+        long fingerprint = fingerprint(metadata);
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            CheckpointStore.createTableIfMissing(session);
+            boolean unchanged = CheckpointStore.read(session, SCHEMA_CHECKPOINT) == fingerprint;
+            transaction.commit();
+            if (unchanged) {
+                return "unchanged, update skipped";
+            }
+        }
+        runSchemaTool(metadata, Action.UPDATE);
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            CheckpointStore.save(session, SCHEMA_CHECKPOINT, fingerprint);
+            transaction.commit();
+        }
+        return "updated";
+    }
+
+    // Same entry point Hibernate uses for hbm2ddl.auto, run against the finished factory
+    private void runSchemaTool(Metadata metadata, Action action) {
+        Map<String, Object> settings = new HashMap<>(sessionFactory.getProperties());
+        settings.remove(AvailableSettings.HBM2DDL_AUTO);
+        settings.put(AvailableSettings.JAKARTA_HBM2DDL_DATABASE_ACTION, action);
+        settings.put(AvailableSettings.JAKARTA_HBM2DDL_SCRIPTS_ACTION, Action.NONE);
+        SchemaManagementToolCoordinator.process(metadata,
+                sessionFactory.unwrap(SessionFactoryImplementor.class).getServiceRegistry(),
+                settings,
+                dropAction -> { });
+    }
+
+    // 64-bit digest of the Hibernate version and every mapped table, column, unique key and sequence
+    static long fingerprint(Metadata metadata) {
+        StringBuilder model = new StringBuilder(Version.getVersionString()).append('\n');
+        List<Table> tables = metadata.collectTableMappings().stream()
+                .sorted(Comparator.comparing(Table::getName))
+                .collect(Collectors.toList());
+        for (Table table : tables) {
+            model.append("table ").append(table.getName()).append('\n');
+            for (Column column : table.getColumns()) {
+                model.append("  ").append(column.getName())
+                        .append(' ').append(column.getSqlType(metadata))
+                        .append(column.isNullable() ? " null" : " not null")
+                        .append(column.isUnique() ? " unique" : "")
+                        .append('\n');
+            }
+            table.getUniqueKeys().values().stream()
+                    .map(key -> "  unique " + key.getColumns().stream().map(Column::getName).collect(Collectors.joining(",")))
+                    .sorted()
+                    .forEach(key -> model.append(key).append('\n'));
+        }
+        for (Namespace namespace : metadata.getDatabase().getNamespaces()) {
+            StreamSupport.stream(namespace.getSequences().spliterator(), false)
+                    .sorted(Comparator.comparing(Sequence::getExportIdentifier))
+                    .forEach(sequence -> model.append("sequence ").append(sequence.getExportIdentifier())
+                            .append(' ').append(sequence.getInitialValue())
+                            .append(' ').append(sequence.getIncrementSize()).append('\n'));
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(model.toString().getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    SessionFactory getSessionFactory() {
+        return sessionFactory;
+    }
+
+    // Milliseconds per phase, in order, plus "total"
+    Map<String, Long> getTimings() {
+        return timings;
+    }
+
+    String describeTimings() {
+        return timings.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.dao;
+
+import com.example.entity.Product;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Three in-memory H2 databases behind one ShardedProductDao
+class ShardedProductDaoTest {
+
+    private static final int SHARDS = 3;
+
+    private static ShardedProductDao dao;
+
+    @BeforeAll
+    static void openShards() {
+        System.setProperty("hibernate.show_sql", "false");
+        dao = ShardedProductDao.inMemory(SHARDS);
+    }
+
+    @AfterAll
+    static void closeShards() {
+        dao.close();
+    }
+
+    @Test
+    void spreadsProductsAndRoutesByIdRange() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            products.add(new Product("sku-" + UUID.randomUUID(), "sharded", 10.0, 100));
+        }
+        assertEquals(300, dao.saveProducts(products).getRows());
+
+        int[] perShard = new int[SHARDS];
+        for (Product product : products) {
+            int shard = dao.shardOf(product.getId());
+            assertEquals(dao.shardFor(product), shard, "product stored on the shard owning its id");
+            perShard[shard]++;
+            assertEquals(product.getName(), dao.getProductById(product.getId()).getName());
+        }
+        for (int count : perShard) {
+            assertTrue(count > 0, "every shard received products");
+        }
+
+        Product first = products.get(0);
+        assertEquals(1, dao.adjustQuantity(first.getId(), -40));
+        assertEquals(products.size(), dao.adjustPrices(products.stream().map(Product::getId).toList(), 10));
+        Product updated = dao.getProductById(first.getId());
+        assertEquals(60, updated.getQuantity());
+        assertEquals(11.0, updated.getPrice());
+
+        dao.deleteProductById(first.getId());
+        assertNull(dao.getProductById(first.getId()));
+    }
+
+    @Test
+    void reportsTheShardWhoseBatchFailed() {
+        Product existing = new Product("taken-" + UUID.randomUUID(), "sharded", 1.0, 1);
+        dao.saveProduct(existing);
+        int failingShard = dao.shardFor(existing);
+
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            products.add(new Product("batch-" + UUID.randomUUID(), "sharded", 1.0, 1));
+        }
+        // the same name lands on the same shard, and breaks its unique constraint there
+        products.add(new Product(existing.getName(), "duplicate", 1.0, 1));
+        long elsewhere = products.stream().filter(product -> dao.shardFor(product) != failingShard).count();
+
+        ShardWriteException failure = assertThrows(ShardWriteException.class, () -> dao.saveProducts(products));
+
+        assertEquals(Set.of(failingShard), failure.getFailedShards());
+        assertEquals(elsewhere, failure.getCommittedRows());
+        for (Product product : products) {
+            if (dao.shardFor(product) != failingShard) {
+                assertEquals(product.getName(), dao.getProductById(product.getId()).getName());
+            }
+        }
+        assertEquals("sharded", dao.getProductByName(existing.getName()).getDescription());
+    }
+
+    @Test
+    void pagesAcrossShardsInIdOrder() {
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            products.add(new Product("page-" + UUID.randomUUID(), "sharded", 1.0, 1));
+        }
+        dao.saveProducts(products);
+
+        List<Long> seen = new ArrayList<>();
+        Long afterId = null;
+        List<Product> page;
+        while (!(page = dao.page(afterId, 25)).isEmpty()) {
+            for (Product product : page) {
+                assertTrue(afterId == null || product.getId() > afterId, "ids ascend across pages");
+                seen.add(product.getId());
+                afterId = product.getId();
+            }
+        }
+        assertEquals(dao.forEachProduct(product -> { }), seen.size(), "paging visits every product once");
+        for (Product product : products) {
+            assertTrue(seen.contains(product.getId()));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.service;
+
+import com.example.dao.ProductDao;
+import com.example.entity.Product;
+import com.example.util.HibernateUtil;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Write-behind of quantity deltas: merged flushes, the stock guard, and what a new buffer
+// recovers from the journal segments of one that crashed.
+class QuantityWriteBehindBufferTest {
+
+    // flushes only when a test asks for one
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private final ProductDao productDao = new ProductDao();
+
+    @TempDir
+    Path journal;
+
+    @BeforeAll
+    static void quietSql() {
+        System.setProperty("hibernate.show_sql", "false");
+    }
+
+    private Long newProduct(int quantity) {
+        Product product = new Product("write-behind-" + UUID.randomUUID(), "write-behind test", 1.0, quantity);
+        productDao.saveProduct(product);
+        return product.getId();
+    }
+
+    private int quantity(Long id) {
+        return productDao.getProductById(id).getQuantity();
+    }
+
+    private QuantityWriteBehindBuffer buffer() {
+        return new QuantityWriteBehindBuffer(productDao.getSessionFactory(), journal, 100, 100, NEVER, false);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(journal)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @Test
+    void mergesDeltasIntoOneUpdatePerProduct() throws Exception {
+        Long first = newProduct(1_000);
+        Long second = newProduct(10);
+        try (QuantityWriteBehindBuffer buffer = buffer()) {
+            for (int i = 0; i < 500; i++) {
+                buffer.add(first, -1);
+            }
+            buffer.add(second, 5);
+            buffer.add(second, -2);
+            assertEquals(2, buffer.getPendingProducts());
+
+            // one sale total for the first, a restock and a sale total for the second
+            assertEquals(3, buffer.flush());
+            assertEquals(0, buffer.getPendingProducts());
+            assertEquals(502, buffer.getAcceptedDeltas());
+        }
+        assertEquals(500, quantity(first));
+        assertEquals(13, quantity(second));
+    }
+
+    @Test
+    void keepsTotalsThatWouldTakeStockBelowZeroAsRejectedDeltas() throws Exception {
+        Long understocked = newProduct(5);
+        Long stocked = newProduct(5);
+        try (QuantityWriteBehindBuffer buffer = buffer()) {
+            buffer.add(understocked, -3);
+            buffer.add(understocked, -4);
+            buffer.add(stocked, -5);
+            buffer.add(Long.MAX_VALUE, -1); // no such product
+            buffer.add(Long.MAX_VALUE, 2);
+
+            assertEquals(1, buffer.flush());
+            assertEquals(3, buffer.getRejectedTotals());
+            assertEquals(Map.of(understocked, -7L, Long.MAX_VALUE, 1L), buffer.getRejectedDeltas());
+            // kept, not retried
+            assertEquals(0, buffer.flush());
+        }
+        assertEquals(5, quantity(understocked));
+        assertEquals(0, quantity(stocked));
+    }
+
+    @Test
+    void appliesARestockEvenWhenASaleInTheSameFlushOversells() throws Exception {
+        Long id = newProduct(10);
+        try (QuantityWriteBehindBuffer buffer = buffer()) {
+            buffer.add(id, 5);
+            buffer.add(id, -20);
+
+            assertEquals(1, buffer.flush());
+            assertEquals(Map.of(id, -20L), buffer.getRejectedDeltas());
+        }
+        assertEquals(15, quantity(id));
+        // the rejected sale outlives the buffer and its journal
+        try (QuantityWriteBehindBuffer reopened = buffer()) {
+            assertEquals(0, reopened.getPendingProducts());
+            assertEquals(Map.of(id, -20L), reopened.getRejectedDeltas());
+        }
+    }
+
+    @Test
+    void letsASaleUseTheRestocksFlushedWithIt() throws Exception {
+        Long id = newProduct(0);
+        try (QuantityWriteBehindBuffer buffer = buffer()) {
+            buffer.add(id, -3);
+            buffer.add(id, 5);
+
+            assertEquals(2, buffer.flush());
+            assertEquals(Map.of(), buffer.getRejectedDeltas());
+        }
+        assertEquals(2, quantity(id));
+    }
+
+    @Test
+    void writesToTheDatabaseOfItsFactory() throws Exception {
+        SessionFactory other = HibernateUtil.newSessionFactory(Map.of(
+                AvailableSettings.JAKARTA_JDBC_URL, "jdbc:h2:mem:write_behind_other;DB_CLOSE_DELAY=-1;MODE=MySQL",
+                "hibernate.hikari.poolName", "write-behind-other-pool",
+                AvailableSettings.USE_SECOND_LEVEL_CACHE, "false",
+                AvailableSettings.USE_QUERY_CACHE, "false"));
+        try {
+            ProductDao otherDao = new ProductDao(other);
+            Product product = new Product("other-" + UUID.randomUUID(), "not in the default database", 1.0, 10);
+            otherDao.saveProduct(product);
+            try (QuantityWriteBehindBuffer buffer = new QuantityWriteBehindBuffer(other, journal, 100, 100, NEVER, false)) {
+                buffer.add(product.getId(), -4);
+                assertEquals(1, buffer.flush());
+            }
+            assertEquals(6, otherDao.getProductById(product.getId()).getQuantity());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    void replaysTheDeltasOfABufferThatWasNeverFlushed() throws Exception {
+        Long id = newProduct(100);
+        // abandoned without close(), as by a crash: its deltas are only in the journal
+        QuantityWriteBehindBuffer crashed = buffer();
+        for (int i = 0; i < 30; i++) {
+            crashed.add(id, -2);
+        }
+        assertEquals(100, quantity(id));
+
+        try (QuantityWriteBehindBuffer recovered = buffer()) {
+            assertEquals(1, recovered.getPendingProducts());
+            assertEquals(1, recovered.flush());
+        }
+        assertEquals(40, quantity(id));
+    }
+
+    @Test
+    void ignoresATornRecordAtTheEndOfTheLastSegment() throws Exception {
+        Long id = newProduct(100);
+        QuantityWriteBehindBuffer crashed = buffer();
+        crashed.add(id, -10);
+        // the crash came halfway through the next record
+        Path last = segments().get(segments().size() - 1);
+        Files.write(last, Arrays.copyOf(ByteBuffer.allocate(Long.BYTES).putLong(id).array(), 6), StandardOpenOption.APPEND);
+
+        try (QuantityWriteBehindBuffer recovered = buffer()) {
+            recovered.flush();
+        }
+        assertEquals(90, quantity(id));
+    }
+
+    @Test
+    void neverReplaysSegmentsAFlushHasCommitted() throws Exception {
+        Long id = newProduct(100);
+        QuantityWriteBehindBuffer crashed = buffer();
+        crashed.add(id, -10);
+        Path flushedSegment = segments().get(0);
+        crashed.flush();
+        assertFalse(Files.exists(flushedSegment), "deleted once applied");
+        crashed.add(id, -1);
+
+        // as if the crash came after the flush committed but before it deleted the segment
+        Files.write(flushedSegment, ByteBuffer.allocate(12).putLong(id).putInt(-10).array());
+
+        try (QuantityWriteBehindBuffer recovered = buffer()) {
+            assertFalse(Files.exists(flushedSegment), "covered by the checkpoint");
+            recovered.flush();
+        }
+        assertEquals(89, quantity(id));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.service;
+
+import com.example.dao.ProductDao;
+import com.example.entity.Product;
+import com.example.util.HibernateUtil;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Concurrency stress test: many threads drain one product's stock at once.
+// Every run must end with exactly the initial stock handed out and quantity 0.
+class StockReservationServiceTest {
+
+    private static final int INITIAL_STOCK = 1_000;
+
+    private final ProductDao productDao = new ProductDao();
+
+    @BeforeAll
+    static void quietSql() {
+        System.setProperty("hibernate.show_sql", "false");
+    }
+
+    @ParameterizedTest(name = "{0} threads")
+    @ValueSource(ints = {1, 8, 64})
+    void optimisticReservationsNeverOversell(int threads) throws Exception {
+        drainConcurrently(threads, false);
+    }
+
+    @ParameterizedTest(name = "{0} threads, hot product")
+    @ValueSource(ints = {1, 8, 64})
+    void conditionalReservationsNeverOversell(int threads) throws Exception {
+        drainConcurrently(threads, true);
+    }
+
+    @Test
+    void reservesInTheDatabaseOfItsDao() {
+        SessionFactory other = HibernateUtil.newSessionFactory(Map.of(
+                AvailableSettings.JAKARTA_JDBC_URL, "jdbc:h2:mem:reservation_other;DB_CLOSE_DELAY=-1;MODE=MySQL",
+                "hibernate.hikari.poolName", "reservation-other-pool",
+                AvailableSettings.USE_SECOND_LEVEL_CACHE, "false",
+                AvailableSettings.USE_QUERY_CACHE, "false"));
+        try {
+            ProductDao otherDao = new ProductDao(other);
+            Product product = new Product("other-" + UUID.randomUUID(), "not in the default database", 1.0, 5);
+            otherDao.saveProduct(product);
+            StockReservationService service = new StockReservationService(otherDao);
+
+            assertTrue(service.reserve(product.getId(), 3));
+            assertFalse(service.reserve(product.getId(), 3), "only 2 left");
+            assertEquals(1, service.getOptimisticReservations());
+            assertEquals(2, otherDao.getProductById(product.getId()).getQuantity());
+        } finally {
+            other.close();
+        }
+    }
+
+    private void drainConcurrently(int threads, boolean hot) throws Exception {
+        Product product = new Product("stress-" + UUID.randomUUID(), "stock reservation stress test",
+                1.0, INITIAL_STOCK);
+        productDao.saveProduct(product);
+        Long id = product.getId();
+
+        StockReservationService service = new StockReservationService(productDao);
+        if (hot) {
+            service.markHot(id);
+        }
+
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger released = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                while (service.reserve(id, 1)) {
+                    // give every tenth unit back so release() races with reserve() too
+                    if (reserved.incrementAndGet() % 10 == 0 && service.release(id, 1)) {
+                        released.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        long began = System.nanoTime();
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(2, TimeUnit.MINUTES);
+        }
+        double seconds = (System.nanoTime() - began) / 1_000_000_000.0;
+        pool.shutdown();
+
+        System.out.printf("%s, %d threads: %d reservations in %.2f s (%.0f/s), %d conflicts, "
+                        + "%d optimistic, %d conditional%n",
+                hot ? "hot" : "optimistic", threads, reserved.get(), seconds, reserved.get() / seconds,
+                service.getConflicts(), service.getOptimisticReservations(),
+                service.getConditionalReservations());
+
+        assertEquals(INITIAL_STOCK, reserved.get() - released.get(), "units handed out");
+        assertEquals(0, productDao.getProductById(id).getQuantity(), "quantity left in the database");
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.library;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only list: O(1) appends and lock-free reads by position. Elements live in chunks
+ * of 8, 16, 32, ... slots, so a short list stays small and a long one is never copied
+ * (unlike CopyOnWriteArrayList or ArrayList). Appends are serialized; size is published only
+ * after the element is written, so readers never see an empty slot.
+ */
+final class AppendLog<T> {
+
+    private static final int FIRST_CHUNK_BITS = 3;
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_BITS;
+
+    // chunk k holds FIRST_CHUNK_SIZE << k elements; 29 chunks cover every int index
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> chunks =
+            new AtomicReferenceArray<>(Integer.SIZE - FIRST_CHUNK_BITS);
+    private volatile int size;
+
+    synchronized int append(T element) {
+        int index = size;
+        if (index == Integer.MAX_VALUE - FIRST_CHUNK_SIZE) {
+            throw new IllegalStateException("AppendLog is full");
+        }
+        int position = index + FIRST_CHUNK_SIZE;
+        int chunk = chunkOf(position);
+        AtomicReferenceArray<T> slots = chunks.get(chunk);
+        if (slots == null) {
+            slots = new AtomicReferenceArray<>(FIRST_CHUNK_SIZE << chunk);
+            chunks.set(chunk, slots);
+        }
+        slots.set(position - (FIRST_CHUNK_SIZE << chunk), element);
+        size = index + 1;
+        return index;
+    }
+
+    // Appends elements in order, taking the lock once
+    synchronized void appendAll(List<? extends T> elements) {
+        for (T element : elements) {
+            append(element);
+        }
+    }
+
+    // Element at index, which must be below a size() read earlier
+    T get(int index) {
+        int position = index + FIRST_CHUNK_SIZE;
+        int chunk = chunkOf(position);
+        return chunks.get(chunk).get(position - (FIRST_CHUNK_SIZE << chunk));
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int chunkOf(int position) {
+        return (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(position)) - FIRST_CHUNK_BITS;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.library;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Books by author. Authors are keyed by their folded name (SearchText.key), so "Émile Zola",
+ * "emile zola" and "EMILE ZOLA" are one author. Each author keeps their current books in the
+ * order they were added, in a list a page is cut straight out of, with the count and price
+ * total kept up to date as books are added or replaced. An author page costs as much as the
+ * books on it and never scans the store; taking a replaced book off its author shifts that
+ * author's later books down by one, a single array copy.
+ */
+@Component
+public class AuthorIndex implements BookIndex {
+
+    private final Map<String, Author> authors = new ConcurrentHashMap<>();
+
+    private static final class Author {
+        final String name; // as first written
+        // guarded by this: the current books oldest first, each with the number it was added as,
+        // and those numbers by book id, so a replaced book is found by binary search
+        final List<Added> books = new ArrayList<>();
+        final Map<Integer, Long> numbers = new HashMap<>();
+        long nextNumber;
+        int pricedBooks;
+        // exact, so removing a replaced book's price leaves no rounding error behind
+        BigDecimal priceTotal = BigDecimal.ZERO;
+
+        Author(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(Book book) {
+            remove(book.getId());
+            books.add(new Added(nextNumber, book));
+            numbers.put(book.getId(), nextNumber++);
+            if (book.getPrice() != null) {
+                pricedBooks++;
+                priceTotal = priceTotal.add(BigDecimal.valueOf(book.getPrice()));
+            }
+        }
+
+        synchronized void remove(int id) {
+            Long number = numbers.remove(id);
+            if (number == null) {
+                return;
+            }
+            Book book = books.remove(indexOf(number)).book;
+            if (book.getPrice() != null) {
+                pricedBooks--;
+                priceTotal = priceTotal.subtract(BigDecimal.valueOf(book.getPrice()));
+            }
+        }
+
+        // The index of the book added as number, which is in books
+        private int indexOf(long number) {
+            int low = 0;
+            int high = books.size() - 1;
+            while (true) {
+                int middle = (low + high) >>> 1;
+                long found = books.get(middle).number;
+                if (found < number) {
+                    low = middle + 1;
+                } else if (found > number) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+        }
+
+        synchronized AuthorResult page(int page, int size) {
+            if (books.isEmpty()) {
+                return null;
+            }
+            long from = Math.min((long) page * size, books.size());
+            int to = (int) Math.min(from + size, books.size());
+            List<Book> result = new ArrayList<>(to - (int) from);
+            for (Added added : books.subList((int) from, to)) {
+                result.add(added.book);
+            }
+            Double averagePrice = pricedBooks == 0 ? null
+                    : priceTotal.divide(BigDecimal.valueOf(pricedBooks), MathContext.DECIMAL64).doubleValue();
+            boolean hasMore = (long) page * size + result.size() < books.size();
+            return new AuthorResult(name, books.size(), averagePrice, page, size, hasMore, result);
+        }
+    }
+
+    private static final class Added {
+        final long number;
+        final Book book;
+
+        Added(long number, Book book) {
+            this.number = number;
+            this.book = book;
+        }
+    }
+
+    // Serialized so a replacement's removal and add cannot interleave with another save of
+    // the same book; reads only lock the author they look at
+    @Override
+    public synchronized void indexed(Book book, Book replaced) {
+        if (replaced != null && replaced.getAuthor() != null) {
+            Author previous = authors.get(SearchText.key(replaced.getAuthor()));
+            if (previous != null) {
+                previous.remove(replaced.getId());
+            }
+        }
+        String key = book.getAuthor() == null ? "" : SearchText.key(book.getAuthor());
+        if (!key.isEmpty()) {
+            authors.computeIfAbsent(key, k -> new Author(book.getAuthor())).add(book);
+        }
+    }
+
+    // Page `page` (from 0) of `size` books by the author, oldest first, with the author's
+    // totals; null if no current book has that author
+    public AuthorResult find(String name, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("page must be >= 0 and size >= 1");
+        }
+        Author author = authors.get(SearchText.key(name));
+        return author == null ? null : author.page(page, size);
+    }
+}
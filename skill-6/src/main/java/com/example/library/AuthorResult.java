@@ -0,0 +1,54 @@
+package com.example.library;
+
+import java.util.List;
+
+// One page of an author's books, with totals over all of them, for /author/{name}
+public class AuthorResult {
+    private final String author;
+    private final int bookCount;
+    private final Double averagePrice;
+    private final int page;
+    private final int size;
+    private final boolean hasMore;
+    private final List<Book> books;
+
+    public AuthorResult(String author, int bookCount, Double averagePrice, int page, int size,
+                        boolean hasMore, List<Book> books) {
+        this.author = author;
+        this.bookCount = bookCount;
+        this.averagePrice = averagePrice;
+        this.page = page;
+        this.size = size;
+        this.hasMore = hasMore;
+        this.books = books;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public int getBookCount() {
+        return bookCount;
+    }
+
+    // Average over the books that have a price; null if none has
+    public Double getAveragePrice() {
+        return averagePrice;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+}
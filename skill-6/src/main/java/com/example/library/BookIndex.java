@@ -0,0 +1,9 @@
+package com.example.library;
+
+// A secondary index over the books in BookRepository. The repository hands every book it
+// stores, the catalog included, to each index before save() returns.
+public interface BookIndex {
+
+    // book was stored; replaced is the book it replaced (same id), or null if it is new
+    void indexed(Book book, Book replaced);
+}
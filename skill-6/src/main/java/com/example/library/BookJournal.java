@@ -0,0 +1,508 @@
+package com.example.library;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Makes BookRepository's added books survive a restart.
+ *
+ * Every save is appended to a journal segment in directory, a file of segmentSize bytes
+ * written through a memory mapping, so an append is a memory copy and is safe from a crash of
+ * the process as soon as it is made. A batch is never split across segments; one that does
+ * not fit a whole segment gets a larger one to itself. With sync, a save also waits until its record has been
+ * forced to disk. Forcing is group-committed: the first waiting save forces everything
+ * appended so far, and the saves that arrive meanwhile wait for the next force, so one disk
+ * flush covers many saves under load.
+ *
+ * Every snapshotInterval (if anything was saved) a snapshot writes the current added books,
+ * without the versions replaced since, to one compact file and deletes the segments it
+ * covers. On startup the newest snapshot is loaded and the segments after it are replayed.
+ * Saves are journaled in the order they were stored, so replaying segments gives every book
+ * its old position; a snapshot leaves the replaced books out, so later positions move down.
+ */
+@Component
+@ConditionalOnProperty(name = "library.journal.enabled", havingValue = "true", matchIfMissing = true)
+public class BookJournal implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BookJournal.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.dat");
+    // record: payload length, CRC32C of the payload, payload
+    private static final int RECORD_HEADER = 8;
+    private static final int HAS_PRICE = 1;
+    private static final int HAS_TITLE = 2;
+    private static final int HAS_AUTHOR = 4;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final Duration snapshotInterval;
+
+    // writers share it; a snapshot takes it alone to cut the journal at a point where every
+    // journaled book has also been applied
+    private final ReentrantReadWriteLock cut = new ReentrantReadWriteLock();
+    // guards the fields below
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition forced = lock.newCondition();
+    private long currentSegment;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int forcedUpTo;
+    private long appended; // records appended, ever
+    private long durable; // records known to be on disk
+    private boolean forcing;
+    private long snapshotAt; // appended at the last snapshot
+
+    private ScheduledExecutorService snapshots;
+
+    @Autowired
+    public BookJournal(@Value("${library.journal.directory:library-journal}") Path directory,
+                       @Value("${library.journal.segment-size:64MB}") DataSize segmentSize,
+                       @Value("${library.journal.sync:true}") boolean sync,
+                       @Value("${library.journal.snapshot-interval:10m}") Duration snapshotInterval) {
+        if (segmentSize.toBytes() < 4096 || segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment size must be between 4KB and 2GB");
+        }
+        this.directory = directory.toAbsolutePath().normalize();
+        this.segmentSize = (int) segmentSize.toBytes();
+        this.sync = sync;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    // Passes every book in the newest snapshot and then in the segments after it to restore,
+    // in the order they were saved, then opens a fresh segment and starts taking snapshots of
+    // what snapshotSource returns. BookRepository calls this once, before it takes saves.
+    void open(Consumer<Book> restore, Supplier<Iterator<Book>> snapshotSource) {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            TreeMap<Long, Path> snapshotFiles = list(SNAPSHOT_NAME);
+            long tail = snapshotFiles.isEmpty() ? 0 : snapshotFiles.lastKey();
+            long restored = 0;
+            if (!snapshotFiles.isEmpty()) {
+                restored += read(snapshotFiles.lastEntry().getValue(), restore, true);
+            }
+            TreeMap<Long, Path> segments = list(SEGMENT_NAME);
+            long replayed = 0;
+            for (Path file : segments.tailMap(tail, true).values()) {
+                replayed += read(file, restore, false);
+            }
+            deleteBefore(tail);
+            currentSegment = Math.max(tail, segments.isEmpty() ? 0 : segments.lastKey() + 1);
+            openSegment(segmentSize);
+            // a replayed tail is compacted by the first snapshot even if nothing new is saved
+            snapshotAt = replayed > 0 ? -1 : 0;
+            log.info("Restored {} books from snapshot and {} journal records from {} in {} ms", restored, replayed,
+                    directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot recover book journal in " + directory, e);
+        }
+        if (!snapshotInterval.isZero() && !snapshotInterval.isNegative()) {
+            snapshots = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "book-journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = snapshotInterval.toMillis();
+            snapshots.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot(snapshotSource);
+                } catch (RuntimeException e) {
+                    // keep the journal; the next snapshot tries again
+                    log.error("Book journal snapshot failed", e);
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Runs apply (which stores books and gives them their ids), journals the books, and
+    // returns apply's result once they are durable. Readers may see the books a moment before.
+    // order, the caller's lock around storing, is held from storing the books to appending
+    // them, so the journal has batches in the order they were stored: replay then replaces the
+    // same books and gives every book the same position. Only the wait for the disk is shared.
+    // Whatever can fail (the size check, starting a new segment) is done before apply, so a
+    // save that throws has stored nothing, and a stored batch is always journaled.
+    <T> T write(List<Book> books, Lock order, Supplier<T> apply) {
+        byte[][] payloads = encodeAll(books);
+        T result;
+        long ticket;
+        cut.readLock().lock();
+        order.lock();
+        try {
+            reserve(payloads);
+            result = apply.get();
+            ticket = append(books, payloads);
+        } finally {
+            order.unlock();
+            cut.readLock().unlock();
+        }
+        if (sync) {
+            awaitDurable(ticket);
+        }
+        return result;
+    }
+
+    // The records of books, before the store has given them ids
+    private byte[][] encodeAll(List<Book> books) {
+        byte[][] payloads = new byte[books.size()][];
+        long bytes = 0;
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = encode(books.get(i));
+            if (payloads[i].length > segmentSize - RECORD_HEADER) {
+                throw new IllegalArgumentException("Book " + books.get(i).getId() + " is too large for the journal");
+            }
+            bytes += RECORD_HEADER + payloads[i].length;
+        }
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("A batch of " + books.size() + " books is too large for the journal");
+        }
+        return payloads;
+    }
+
+    // Makes room for the whole batch in the current segment, starting a new one if it has too
+    // little left (larger than segmentSize if the batch needs it), so a batch never spans two
+    private void reserve(byte[][] payloads) {
+        int bytes = 0;
+        for (byte[] payload : payloads) {
+            bytes += RECORD_HEADER + payload.length;
+        }
+        lock.lock();
+        try {
+            if (segment.remaining() < bytes) {
+                rollSegment(Math.max(segmentSize, bytes));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start a new book journal segment", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Fills in the ids the store gave and appends the records to the room reserve() made:
+    // only memory copies, which cannot fail once the books are stored
+    private long append(List<Book> books, byte[][] payloads) {
+        CRC32C crc = new CRC32C();
+        lock.lock();
+        try {
+            for (int i = 0; i < payloads.length; i++) {
+                ByteBuffer.wrap(payloads[i]).putInt(0, books.get(i).getId());
+                crc.reset();
+                crc.update(payloads[i]);
+                segment.putInt(payloads[i].length).putInt((int) crc.getValue()).put(payloads[i]);
+            }
+            appended += payloads.length;
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Group commit: one caller forces what has been appended, the others wait for it
+    private void awaitDurable(long ticket) {
+        lock.lock();
+        try {
+            while (durable < ticket) {
+                if (forcing) {
+                    forced.awaitUninterruptibly();
+                    continue;
+                }
+                forcing = true;
+                MappedByteBuffer target = segment;
+                int from = forcedUpTo;
+                int to = segment.position();
+                long covered = appended;
+                lock.unlock();
+                try {
+                    target.force(from, to - from);
+                } finally {
+                    lock.lock();
+                    forcing = false;
+                    forced.signalAll();
+                }
+                if (target == segment) {
+                    forcedUpTo = Math.max(forcedUpTo, to);
+                }
+                durable = Math.max(durable, covered);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with lock held
+    private void rollSegment(int size) throws IOException {
+        segment.force();
+        durable = appended;
+        channel.close();
+        currentSegment++;
+        openSegment(size);
+    }
+
+    private void openSegment(int size) throws IOException {
+        channel = FileChannel.open(directory.resolve(String.format("segment-%012d.log", currentSegment)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // mapping past the end grows the file; the zeros after the last record mark the end
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        forcedUpTo = 0;
+    }
+
+    // Writes the books from source to a new snapshot that replaces every earlier segment and
+    // snapshot. Returns false if nothing was saved since the last one.
+    boolean snapshot(Supplier<Iterator<Book>> source) {
+        long tail;
+        Iterator<Book> books;
+        cut.writeLock().lock();
+        try {
+            lock.lock();
+            try {
+                if (appended == snapshotAt) {
+                    return false;
+                }
+                snapshotAt = appended;
+                rollSegment(segmentSize);
+                tail = currentSegment;
+            } finally {
+                lock.unlock();
+            }
+            // every book in the segments before tail has been applied, so source has it
+            books = source.get();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start a new book journal segment", e);
+        } finally {
+            cut.writeLock().unlock();
+        }
+
+        long start = System.nanoTime();
+        Path file = directory.resolve(String.format("snapshot-%012d.dat", tail));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        long written = 0;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            CRC32C crc = new CRC32C();
+            while (books.hasNext()) {
+                byte[] payload = encode(books.next());
+                if (buffer.remaining() < RECORD_HEADER + payload.length) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                    buffer.clear();
+                    if (buffer.remaining() < RECORD_HEADER + payload.length) {
+                        buffer = ByteBuffer.allocateDirect(RECORD_HEADER + payload.length);
+                    }
+                }
+                crc.reset();
+                crc.update(payload);
+                buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+                written++;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write book snapshot " + temporary, e);
+        }
+        try {
+            // a snapshot file exists only once it is complete
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            deleteBefore(tail);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot install book snapshot " + file, e);
+        }
+        log.info("Wrote snapshot of {} books to {} in {} ms", written, file,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return true;
+    }
+
+    private void deleteBefore(long tail) throws IOException {
+        for (Path file : list(SEGMENT_NAME).headMap(tail).values()) {
+            Files.delete(file);
+        }
+        for (Path file : list(SNAPSHOT_NAME).headMap(tail).values()) {
+            Files.delete(file);
+        }
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().endsWith(".dat.tmp")) {
+                    Files.delete(file); // left by a snapshot that did not finish
+                }
+            }
+        }
+    }
+
+    private TreeMap<Long, Path> list(Pattern name) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (var entries = Files.list(directory)) {
+            entries.forEach(file -> {
+                Matcher matcher = name.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+        return files;
+    }
+
+    // Reads the records of a snapshot or segment, returning how many there were. A segment
+    // ends at its first zero length; a crash can also leave a torn record there, which is
+    // dropped, since its save had not returned. A snapshot must be intact.
+    private static long read(Path file, Consumer<Book> action, boolean snapshot) throws IOException {
+        long records = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).limit(0);
+            CRC32C crc = new CRC32C();
+            byte[] payload = new byte[256];
+            boolean eof = false;
+            while (true) {
+                if (buffer.remaining() < RECORD_HEADER && !eof) {
+                    eof = fill(in, buffer);
+                    continue;
+                }
+                if (buffer.remaining() < RECORD_HEADER) {
+                    break;
+                }
+                int length = buffer.getInt(buffer.position());
+                if (length <= 0) {
+                    break;
+                }
+                if (buffer.remaining() < RECORD_HEADER + length) {
+                    if (eof) {
+                        break;
+                    }
+                    if (buffer.capacity() < RECORD_HEADER + length) {
+                        buffer = ByteBuffer.allocateDirect(RECORD_HEADER + length).put(buffer).flip();
+                    }
+                    eof = fill(in, buffer);
+                    continue;
+                }
+                buffer.getInt();
+                int checksum = buffer.getInt();
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                buffer.get(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    if (snapshot) {
+                        throw new IOException("Corrupt record in " + file);
+                    }
+                    break;
+                }
+                action.accept(decode(payload, length));
+                records++;
+            }
+            if (snapshot && (buffer.hasRemaining() || !eof)) {
+                throw new IOException("Truncated snapshot " + file);
+            }
+        }
+        return records;
+    }
+
+    // Moves the unread bytes to the front and reads more after them; true at end of file
+    private static boolean fill(FileChannel in, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+        try {
+            while (buffer.hasRemaining()) {
+                if (in.read(buffer) < 0) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    // id, flags, price, title length and bytes, author length and bytes; the id is 0 until
+    // the store gives the book one
+    private static byte[] encode(Book book) {
+        byte[] title = book.getTitle() == null ? new byte[0] : book.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] author = book.getAuthor() == null ? new byte[0] : book.getAuthor().getBytes(StandardCharsets.UTF_8);
+        int flags = (book.getPrice() != null ? HAS_PRICE : 0)
+                | (book.getTitle() != null ? HAS_TITLE : 0)
+                | (book.getAuthor() != null ? HAS_AUTHOR : 0);
+        return ByteBuffer.allocate(4 + 1 + 8 + 4 + title.length + 4 + author.length)
+                .putInt(book.getId() != null ? book.getId() : 0)
+                .put((byte) flags)
+                .putDouble(book.getPrice() != null ? book.getPrice() : 0)
+                .putInt(title.length).put(title)
+                .putInt(author.length).put(author)
+                .array();
+    }
+
+    private static Book decode(byte[] payload, int length) {
+        ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+        int id = record.getInt();
+        int flags = record.get();
+        double price = record.getDouble();
+        int titleLength = record.getInt();
+        String title = (flags & HAS_TITLE) != 0
+                ? new String(payload, record.position(), titleLength, StandardCharsets.UTF_8) : null;
+        record.position(record.position() + titleLength);
+        int authorLength = record.getInt();
+        String author = (flags & HAS_AUTHOR) != 0
+                ? new String(payload, record.position(), authorLength, StandardCharsets.UTF_8) : null;
+        return new Book(id, title, author, (flags & HAS_PRICE) != 0 ? price : null);
+    }
+
+    // Stops taking snapshots and forces what has been appended
+    @PreDestroy
+    @Override
+    public void close() {
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+        }
+        lock.lock();
+        try {
+            if (channel != null) {
+                segment.force();
+                durable = appended;
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close book journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
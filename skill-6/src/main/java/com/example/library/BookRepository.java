@@ -0,0 +1,157 @@
+package com.example.library;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Every book the API knows about: the fixed catalog and the books added through /addbook,
+ * kept by a BookStore, on the heap or off it (library.storage).
+ *
+ * Lookups and inserts are O(1) and reads never take a lock. Every book has a position, the
+ * catalog first and then the added books in the order they arrived; positions never change,
+ * so listings can page or stream through them without copying anything. Every stored book is
+ * passed on to the BookIndex beans (title search, authors, ...), and to the BookJournal, if
+ * enabled, which restores the added books on startup.
+ */
+@Component
+public class BookRepository {
+
+    static final List<Book> CATALOG = List.of(
+            new Book(1, "Clean Code", "Robert C. Martin", 39.99),
+            new Book(2, "Effective Java", "Joshua Bloch", 49.99),
+            new Book(3, "Domain-Driven Design", "Eric Evans", 59.99));
+
+    private final BookStore store;
+    private final AtomicInteger idGenerator = new AtomicInteger(100);
+    // bumped only after a save is visible everywhere, so anything read after version() shows
+    // at least the books of that version
+    private final AtomicLong version = new AtomicLong();
+    // held from storing a batch until its indexes are notified and the version is bumped (and,
+    // with a journal, until it is appended), so saves of the same id reach the store, the
+    // indexes and the journal in one order
+    private final ReentrantLock saves = new ReentrantLock();
+    private final List<BookIndex> indexes;
+    private final BookJournal journal; // null when library.journal.enabled is false
+
+    public BookRepository() {
+        this(List.of());
+    }
+
+    public BookRepository(List<BookIndex> indexes) {
+        this(indexes, Optional.empty());
+    }
+
+    public BookRepository(List<BookIndex> indexes, Optional<BookJournal> journal) {
+        this(new HeapBookStore(), indexes, journal);
+    }
+
+    // With a journal, the books it restores are stored (and indexed) before any save
+    @Autowired
+    public BookRepository(BookStore store, List<BookIndex> indexes, Optional<BookJournal> journal) {
+        this.store = store;
+        this.indexes = List.copyOf(indexes);
+        this.journal = journal.orElse(null);
+        store.storeAll(CATALOG, idGenerator);
+        for (Book book : CATALOG) {
+            notifyIndexes(book, null);
+        }
+        if (this.journal != null) {
+            this.journal.open(this::restore, this::currentAddedBooks);
+        }
+    }
+
+    private void restore(Book book) {
+        idGenerator.accumulateAndGet(book.getId(), Math::max);
+        storeAll(List.of(book));
+    }
+
+    // The added books stored so far, less the ones replaced, for a journal snapshot
+    private Iterator<Book> currentAddedBooks() {
+        return IntStream.range(firstAddedPosition(), endPosition())
+                .mapToObj(this::bookAt)
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+
+    // The book with this id, or null
+    public Book findById(int id) {
+        return store.findById(id);
+    }
+
+    // Stores book, giving it the next free id if it has none. A book with the id of an existing
+    // one replaces it. With a journal, returns once the book is journaled.
+    public Book save(Book book) {
+        saveAll(List.of(book));
+        return book;
+    }
+
+    // Stores a batch of books like save() would one by one, and returns the book each one
+    // replaced (null if none). The books without an id get theirs from one block reserved
+    // from the id generator, and the store takes the whole batch at once; a journal writes it
+    // with a single group commit.
+    public List<Book> saveAll(List<Book> batch) {
+        if (journal != null) {
+            return journal.write(batch, saves, () -> storeAll(batch));
+        }
+        saves.lock();
+        try {
+            return storeAll(batch);
+        } finally {
+            saves.unlock();
+        }
+    }
+
+    private List<Book> storeAll(List<Book> batch) {
+        List<Book> replaced = store.storeAll(batch, idGenerator);
+        for (int i = 0; i < batch.size(); i++) {
+            notifyIndexes(batch.get(i), replaced.get(i));
+        }
+        version.incrementAndGet();
+        return replaced;
+    }
+
+    private void notifyIndexes(Book book, Book replaced) {
+        for (BookIndex index : indexes) {
+            index.indexed(book, replaced);
+        }
+    }
+
+    // Goes up after every save or saveAll, for ETags and cached responses
+    public long version() {
+        return version.get();
+    }
+
+    // Number of distinct books
+    public int count() {
+        return store.count();
+    }
+
+    public List<Book> catalogBooks() {
+        return CATALOG;
+    }
+
+    // Position of the first added book; the catalog comes before it
+    public int firstAddedPosition() {
+        return CATALOG.size();
+    }
+
+    // Position after the last book stored so far
+    public int endPosition() {
+        return store.size();
+    }
+
+    // The book at position (below an endPosition() read earlier), or null if it has been
+    // replaced since
+    public Book bookAt(int position) {
+        return store.bookAt(position);
+    }
+}
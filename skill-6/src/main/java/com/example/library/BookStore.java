@@ -0,0 +1,38 @@
+package com.example.library;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// How BookRepository keeps its books: by id, and by position in the order they were stored,
+// positions never changing. library.storage picks HeapBookStore (the default) or
+// OffHeapBookStore.
+public interface BookStore {
+
+    // The book with this id, or null
+    Book findById(int id);
+
+    // Stores the books at the next positions, in order. A book without an id is given the
+    // next id from idGenerator that no book has; one with the id of a stored book replaces
+    // it. Returns the book each one replaced, or null where none.
+    List<Book> storeAll(List<Book> books, AtomicInteger idGenerator);
+
+    // Number of distinct books
+    int count();
+
+    // Number of positions so far, replaced books included
+    int size();
+
+    // The book at position (below a size() read earlier), or null if it has been replaced
+    Book bookAt(int position);
+
+    // Reserves an id for each book in books without one, and returns the first of them
+    static int reserveIds(List<Book> books, AtomicInteger idGenerator) {
+        int unnumbered = 0;
+        for (Book book : books) {
+            if (book.getId() == null) {
+                unnumbered++;
+            }
+        }
+        return idGenerator.getAndAdd(unnumbered) + 1;
+    }
+}
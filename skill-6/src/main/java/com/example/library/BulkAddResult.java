@@ -0,0 +1,82 @@
+package com.example.library;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// What /addbooks did with each book it was sent, with totals
+public class BulkAddResult {
+    private final int received;
+    private final int created;
+    private final int replaced;
+    private final int failed;
+    private final List<Item> items;
+
+    public BulkAddResult(List<Item> items) {
+        this.items = items;
+        this.received = items.size();
+        this.created = count(items, Item.CREATED);
+        this.replaced = count(items, Item.REPLACED);
+        this.failed = count(items, Item.INVALID);
+    }
+
+    private static int count(List<Item> items, String status) {
+        return (int) items.stream().filter(item -> item.getStatus().equals(status)).count();
+    }
+
+    public int getReceived() {
+        return received;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getReplaced() {
+        return replaced;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    // The outcome for the book at `index` (from 0) in the request
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Item {
+        static final String CREATED = "created";
+        static final String REPLACED = "replaced";
+        static final String INVALID = "invalid";
+
+        private final int index;
+        private final Integer id;
+        private final String status;
+        private final String error;
+
+        Item(int index, Integer id, String status, String error) {
+            this.index = index;
+            this.id = id;
+            this.status = status;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Integer getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
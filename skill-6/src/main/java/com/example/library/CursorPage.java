@@ -0,0 +1,23 @@
+package com.example.library;
+
+import java.util.List;
+
+// One page of a cursor-paged listing. nextCursor fetches the page after this one; it is null
+// once the listing is exhausted.
+public class CursorPage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,417 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Typo-tolerant search over titles and authors, for /search/fuzzy.
+ *
+ * Query words are matched against the vocabulary, the distinct words of every indexed title
+ * and author, rather than against books. The vocabulary words that share enough trigrams with
+ * a query word are found through a trigram index, and kept if their edit distance to it is
+ * at most maxEdits(length): "efective" finds "effective". The last query word may also be
+ * the start of a word, with the same tolerance, so "jav" finds "java".
+ *
+ * A book scores, for each query word, 1 for an exact match down by equal steps per edit of
+ * its best match. Each vocabulary word keeps the ascending doc numbers of the books it appears
+ * in; the matched words are walked closest first, then rarest first, and each book reached is
+ * scored in full. The walk stops when the best score a book with none of the words walked so
+ * far could reach is no better than the last of the top `size`, or after MAX_CANDIDATES
+ * books, so common words are rarely walked. Ties go to the book with fewer words, then to the
+ * older.
+ */
+@Component
+public class FuzzyIndex implements BookIndex {
+
+    // Books scored per query at most
+    static final int MAX_CANDIDATES = 5_000;
+    // Query words looked at; further ones are ignored
+    static final int MAX_QUERY_WORDS = 16;
+    private static final char BOUNDARY = '$';
+
+    private final Map<String, Term> terms = new ConcurrentHashMap<>();
+    // term id -> term
+    private final AppendLog<Term> vocabulary = new AppendLog<>();
+    // trigram -> ascending ids of the terms containing it
+    private final Map<String, IntAppendLog> trigrams = new ConcurrentHashMap<>();
+    // doc number -> indexed book
+    private final AppendLog<IndexedBook> docs = new AppendLog<>();
+    // latest indexed version of every book, so the one it replaces can be marked stale
+    private final Map<Integer, IndexedBook> current = new ConcurrentHashMap<>();
+
+    private static final class Term {
+        final int id;
+        final String word;
+        final IntAppendLog docs = new IntAppendLog();
+
+        Term(int id, String word) {
+            this.id = id;
+            this.word = word;
+        }
+    }
+
+    private static final class IndexedBook {
+        final Book book;
+        final int[] terms; // ids of the distinct title and author words
+        volatile boolean stale;
+
+        IndexedBook(Book book, int[] terms) {
+            this.book = book;
+            this.terms = terms;
+        }
+    }
+
+    // The vocabulary words matching one query word, with the edits each needs
+    private static final class Matches {
+        final int[] termIds;
+        final int[] edits;
+        final int maxEdits;
+
+        Matches(int[] termIds, int[] edits, int maxEdits) {
+            this.termIds = termIds;
+            this.edits = edits;
+            this.maxEdits = maxEdits;
+        }
+
+        // 1 for an exact match, down by equal steps per edit
+        double weight(int edits) {
+            return 1 - (double) edits / (maxEdits + 1);
+        }
+    }
+
+    // One matched vocabulary word: the query word it matches and what it is worth
+    private static final class Matched {
+        final Term term;
+        final int word;
+        final double weight;
+
+        Matched(Term term, int word, double weight) {
+            this.term = term;
+            this.word = word;
+            this.weight = weight;
+        }
+    }
+
+    // term id -> int, for the terms of one query: open addressing with linear probing
+    private static final class TermMap {
+        final int[] keys;
+        final int[] values;
+        final int mask;
+
+        TermMap(int terms) {
+            int capacity = Integer.highestOneBit(Math.max(2, terms) * 2 - 1) * 2;
+            keys = new int[capacity];
+            values = new int[capacity];
+            mask = capacity - 1;
+            Arrays.fill(keys, -1);
+        }
+
+        // The slot of termId, claimed for it if it has none
+        int slot(int termId) {
+            int i = termId * 0x9e3779b9 & mask;
+            while (keys[i] != -1 && keys[i] != termId) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = termId;
+            return i;
+        }
+
+        int get(int termId) {
+            for (int i = termId * 0x9e3779b9 & mask; keys[i] != -1; i = (i + 1) & mask) {
+                if (keys[i] == termId) {
+                    return values[i];
+                }
+            }
+            return 0;
+        }
+    }
+
+    // Indexing is serialized so doc numbers reach every postings list in ascending order;
+    // searches never wait for it
+    @Override
+    public synchronized void indexed(Book book, Book replaced) {
+        Set<String> words = new LinkedHashSet<>(SearchText.words(book.getTitle()));
+        words.addAll(SearchText.words(book.getAuthor()));
+        Term[] bookTerms = new Term[words.size()];
+        int[] ids = new int[words.size()];
+        int i = 0;
+        for (String word : words) {
+            Term term = terms.get(word);
+            if (term == null) {
+                term = new Term(vocabulary.size(), word);
+                vocabulary.append(term);
+                for (String trigram : trigrams(word, false)) {
+                    trigrams.computeIfAbsent(trigram, t -> new IntAppendLog()).append(term.id);
+                }
+                terms.put(word, term);
+            }
+            bookTerms[i] = term;
+            ids[i++] = term.id;
+        }
+        // the terms are complete before any posting leads a search to this book
+        IndexedBook entry = new IndexedBook(book, ids);
+        int doc = docs.append(entry);
+        for (Term term : bookTerms) {
+            term.docs.append(doc);
+        }
+        IndexedBook previous = current.put(book.getId(), entry);
+        if (previous != null) {
+            previous.stale = true;
+        }
+    }
+
+    // The distinct trigrams of word with a boundary mark before it, and after it unless it is
+    // a prefix: "java" has $ja, jav, ava, va$
+    static Set<String> trigrams(String word, boolean prefix) {
+        String marked = BOUNDARY + word + (prefix ? "" : String.valueOf(BOUNDARY));
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= marked.length(); i++) {
+            trigrams.add(marked.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    // Edits a query word of this length may need: none up to 2 letters, 1 up to 5, else 2
+    static int maxEdits(int length) {
+        return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+    }
+
+    // The `size` books best matching query, best first
+    public FuzzyResult search(String query, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be >= 1");
+        }
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(SearchText.words(query)));
+        if (words.size() > MAX_QUERY_WORDS) {
+            words = words.subList(0, MAX_QUERY_WORDS);
+        }
+        List<Matches> matches = new ArrayList<>(words.size());
+        int matchedTerms = 0;
+        for (int i = 0; i < words.size(); i++) {
+            Matches found = match(words.get(i), i == words.size() - 1);
+            matches.add(found);
+            matchedTerms += found.termIds.length;
+        }
+        if (matchedTerms == 0) {
+            return new FuzzyResult(query, List.of());
+        }
+        // term id -> the edits it needs for each query word it matches, plus one, two bits per
+        // word (0 where it does not match)
+        TermMap termEdits = new TermMap(matchedTerms);
+        List<Matched> matched = new ArrayList<>(matchedTerms);
+        for (int word = 0; word < matches.size(); word++) {
+            Matches found = matches.get(word);
+            for (int i = 0; i < found.termIds.length; i++) {
+                termEdits.values[termEdits.slot(found.termIds[i])] |= (found.edits[i] + 1) << 2 * word;
+                matched.add(new Matched(vocabulary.get(found.termIds[i]), word, found.weight(found.edits[i])));
+            }
+        }
+        // closest first, so the top `size` fill with good scores early; then rarest first
+        matched.sort(Comparator.<Matched>comparingDouble(m -> -m.weight).thenComparingInt(m -> m.term.docs.size()));
+        // bounds[i]: the best score of a book with none of the first i matched words
+        double[] bounds = new double[matched.size() + 1];
+        double[] wordBest = new double[matches.size()];
+        for (int i = matched.size() - 1; i >= 0; i--) {
+            Matched m = matched.get(i);
+            bounds[i] = bounds[i + 1] + Math.max(0, m.weight - wordBest[m.word]);
+            wordBest[m.word] = Math.max(wordBest[m.word], m.weight);
+        }
+
+        int docCount = docs.size();
+        BitSet seen = new BitSet(docCount);
+        int[] bookEdits = new int[matches.size()];
+        PriorityQueue<Scored> best = new PriorityQueue<>(size + 1, WORSE_FIRST);
+        int gathered = 0;
+        gather:
+        for (int i = 0; i < matched.size(); i++) {
+            if (best.size() == size && bounds[i] <= best.peek().score) {
+                break; // no book left unseen can beat the ones found
+            }
+            IntAppendLog postings = matched.get(i).term.docs;
+            for (int p = 0, n = postings.size(); p < n; p++) {
+                int doc = postings.get(p);
+                if (doc >= docCount || seen.get(doc)) {
+                    continue;
+                }
+                seen.set(doc);
+                IndexedBook entry = docs.get(doc);
+                if (!entry.stale) {
+                    Scored scored = new Scored(doc, entry, score(entry, termEdits, matches, bookEdits));
+                    if (best.size() < size) {
+                        best.add(scored);
+                    } else if (WORSE_FIRST.compare(scored, best.peek()) > 0) {
+                        best.poll();
+                        best.add(scored);
+                    }
+                }
+                if (++gathered == MAX_CANDIDATES) {
+                    break gather;
+                }
+            }
+        }
+        List<FuzzyResult.Match> ranked = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            Scored scored = best.poll();
+            ranked.add(new FuzzyResult.Match(scored.entry.book, scored.score));
+        }
+        Collections.reverse(ranked);
+        return new FuzzyResult(query, ranked);
+    }
+
+    // The sum over the query words of the weight of the book's best match for each
+    private static double score(IndexedBook entry, TermMap termEdits, List<Matches> matches, int[] bookEdits) {
+        Arrays.fill(bookEdits, 0);
+        for (int term : entry.terms) {
+            int packed = termEdits.get(term);
+            while (packed != 0) {
+                int shift = Integer.numberOfTrailingZeros(packed) & ~1;
+                int word = shift / 2;
+                int edits = packed >>> shift & 3;
+                if (bookEdits[word] == 0 || edits < bookEdits[word]) {
+                    bookEdits[word] = edits;
+                }
+                packed &= ~(3 << shift);
+            }
+        }
+        double score = 0;
+        for (int word = 0; word < bookEdits.length; word++) {
+            if (bookEdits[word] != 0) {
+                score += matches.get(word).weight(bookEdits[word] - 1);
+            }
+        }
+        return score;
+    }
+
+    private static final class Scored {
+        final int doc;
+        final IndexedBook entry;
+        final double score;
+
+        Scored(int doc, IndexedBook entry, double score) {
+            this.doc = doc;
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+
+    // Worse before better: a lower score, then more words, then a newer book
+    private static final Comparator<Scored> WORSE_FIRST = (a, b) -> {
+        if (a.score != b.score) {
+            return Double.compare(a.score, b.score);
+        }
+        if (a.entry.terms.length != b.entry.terms.length) {
+            return Integer.compare(b.entry.terms.length, a.entry.terms.length);
+        }
+        return Integer.compare(b.doc, a.doc);
+    };
+
+    // The vocabulary words within maxEdits of word, or of their start if prefix. A candidate
+    // must share enough of word's trigrams, as one edit changes at most four of them.
+    private Matches match(String word, boolean prefix) {
+        int maxEdits = maxEdits(word.length());
+        Set<String> grams = trigrams(word, prefix);
+        List<IntAppendLog> lists = new ArrayList<>(grams.size());
+        int listed = 0;
+        for (String gram : grams) {
+            IntAppendLog ids = trigrams.get(gram);
+            if (ids != null) {
+                lists.add(ids);
+                listed += ids.size();
+            }
+        }
+        // term id -> trigrams shared with word
+        TermMap shared = new TermMap(listed);
+        for (IntAppendLog ids : lists) {
+            for (int i = 0, n = ids.size(); i < n; i++) {
+                shared.values[shared.slot(ids.get(i))]++;
+            }
+        }
+        int needed = Math.max(1, grams.size() - 4 * maxEdits);
+        List<int[]> found = new ArrayList<>();
+        for (int slot = 0; slot < shared.keys.length; slot++) {
+            int id = shared.keys[slot];
+            if (id != -1 && shared.values[slot] >= needed) {
+                int edits = distance(word, vocabulary.get(id).word, maxEdits, prefix);
+                if (edits <= maxEdits) {
+                    found.add(new int[] {id, edits});
+                }
+            }
+        }
+        Term exact = grams.isEmpty() ? terms.get(word) : null; // too short for a trigram
+        if (exact != null) {
+            found.add(new int[] {exact.id, 0});
+        }
+        return new Matches(found.stream().mapToInt(pair -> pair[0]).toArray(),
+                found.stream().mapToInt(pair -> pair[1]).toArray(), maxEdits);
+    }
+
+    /**
+     * Edit distance from a to b, or with prefix to the closest prefix of b, if it is at most
+     * max; otherwise max + 1. An edit inserts, deletes or replaces a letter, or swaps two
+     * adjacent ones ("brian" -> "brain"), the usual typos. Only the diagonal band of max cells
+     * either side is filled, and it stops as soon as a whole row is over max.
+     */
+    static int distance(String a, String b, int max, boolean prefix) {
+        int m = a.length();
+        int n = b.length();
+        int over = max + 1;
+        if (!prefix && Math.abs(m - n) > max) {
+            return over;
+        }
+        int[] beforePrevious = new int[n + 1];
+        int[] previous = new int[n + 1];
+        int[] row = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            previous[j] = Math.min(j, over);
+        }
+        for (int i = 1; i <= m; i++) {
+            if (i - max > n) {
+                return over; // a is more than max longer than b
+            }
+            int from = Math.max(1, i - max);
+            int to = Math.min(n, i + max);
+            row[0] = Math.min(i, over);
+            row[from - 1] = from == 1 ? row[0] : over;
+            int rowMin = row[from - 1];
+            char c = a.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int edit = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                int cell = Math.min(edit, Math.min(previous[j], row[j - 1]) + 1);
+                if (i > 1 && j > 1 && c == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    cell = Math.min(cell, beforePrevious[j - 2] + 1);
+                }
+                row[j] = Math.min(over, cell);
+                rowMin = Math.min(rowMin, row[j]);
+            }
+            if (to < n) {
+                row[to + 1] = over;
+            }
+            if (rowMin > max) {
+                return over;
+            }
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = row;
+            row = swap;
+        }
+        if (!prefix) {
+            return previous[n];
+        }
+        int best = over;
+        for (int j = Math.max(0, m - max); j <= Math.min(n, m + max); j++) {
+            best = Math.min(best, previous[j]);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.library;
+
+import java.util.List;
+
+// The best /search/fuzzy matches for a query, best first
+public class FuzzyResult {
+    private final String query;
+    private final List<Match> matches;
+
+    public FuzzyResult(String query, List<Match> matches) {
+        this.query = query;
+        this.matches = matches;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<Match> getMatches() {
+        return matches;
+    }
+
+    // A matching book; score adds up to 1 per query word, less for each typo it took
+    public static class Match {
+        private final Book book;
+        private final double score;
+
+        Match(Book book, double score) {
+            this.book = book;
+            this.score = score;
+        }
+
+        public Book getBook() {
+            return book;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+}
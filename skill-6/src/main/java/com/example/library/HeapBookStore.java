@@ -0,0 +1,65 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+// The books as heap objects, behind an id-keyed ConcurrentHashMap, with an AppendLog of them in
+// the order they were stored. Lookups and stores are O(1) and reads never take a lock.
+@Component
+@ConditionalOnProperty(name = "library.storage", havingValue = "heap", matchIfMissing = true)
+public class HeapBookStore implements BookStore {
+
+    private final Map<Integer, Book> books = new ConcurrentHashMap<>();
+    private final AppendLog<Book> storedBooks = new AppendLog<>();
+
+    @Override
+    public Book findById(int id) {
+        return books.get(id);
+    }
+
+    // Concurrent batches only share the map; the log takes each whole batch under one lock
+    @Override
+    public List<Book> storeAll(List<Book> batch, AtomicInteger idGenerator) {
+        int nextId = BookStore.reserveIds(batch, idGenerator);
+        List<Book> replaced = new ArrayList<>(batch.size());
+        for (Book book : batch) {
+            if (book.getId() == null) {
+                // an id in the block may already be taken by a client-chosen one
+                int id = nextId++;
+                book.setId(id);
+                while (books.putIfAbsent(id, book) != null) {
+                    id = idGenerator.incrementAndGet();
+                    book.setId(id);
+                }
+                replaced.add(null);
+            } else {
+                replaced.add(books.put(book.getId(), book));
+            }
+        }
+        storedBooks.appendAll(batch);
+        return replaced;
+    }
+
+    // ConcurrentHashMap keeps this count as entries come and go
+    @Override
+    public int count() {
+        return books.size();
+    }
+
+    @Override
+    public int size() {
+        return storedBooks.size();
+    }
+
+    @Override
+    public Book bookAt(int position) {
+        Book book = storedBooks.get(position);
+        return books.get(book.getId()) == book ? book : null;
+    }
+}
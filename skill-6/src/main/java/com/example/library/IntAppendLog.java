@@ -0,0 +1,72 @@
+package com.example.library;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * AppendLog for ints, without boxing: chunks of 8, 16, 32, ... int slots. Appends must be
+ * serialized by the caller; readers see every element below a size() they have read.
+ */
+final class IntAppendLog {
+
+    private static final int FIRST_CHUNK_BITS = 3;
+    private static final int FIRST_CHUNK_SIZE = 1 << FIRST_CHUNK_BITS;
+
+    private final AtomicReferenceArray<int[]> chunks = new AtomicReferenceArray<>(Integer.SIZE - FIRST_CHUNK_BITS);
+    private volatile int size;
+
+    void append(int value) {
+        int index = size;
+        if (index == Integer.MAX_VALUE - FIRST_CHUNK_SIZE) {
+            throw new IllegalStateException("IntAppendLog is full");
+        }
+        int position = index + FIRST_CHUNK_SIZE;
+        int chunk = chunkOf(position);
+        int[] slots = chunks.get(chunk);
+        if (slots == null) {
+            slots = new int[FIRST_CHUNK_SIZE << chunk];
+            chunks.set(chunk, slots);
+        }
+        slots[position - (FIRST_CHUNK_SIZE << chunk)] = value;
+        size = index + 1; // publishes the slot write
+    }
+
+    int get(int index) {
+        int position = index + FIRST_CHUNK_SIZE;
+        int chunk = chunkOf(position);
+        return chunks.get(chunk)[position - (FIRST_CHUNK_SIZE << chunk)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // For ascending contents: the first index in [from, limit) whose value is >= target, or
+    // limit. Gallops forward from `from` and then binary searches, so a short hop is cheap.
+    int seek(int from, int limit, int target) {
+        if (from >= limit || get(from) >= target) {
+            return from;
+        }
+        int low = from; // get(low) < target
+        int step = 1;
+        int high = from + 1;
+        while (high < limit && get(high) < target) {
+            low = high;
+            step <<= 1;
+            high = (int) Math.min((long) from + step, limit);
+        }
+        // get(low) < target, and high == limit or get(high) >= target
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (get(middle) < target) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return high;
+    }
+
+    private static int chunkOf(int position) {
+        return (Integer.SIZE - 1 - Integer.numberOfLeadingZeros(position)) - FIRST_CHUNK_BITS;
+    }
+}
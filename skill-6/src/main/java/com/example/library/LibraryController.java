@@ -1,40 +1,78 @@
 package com.example.library;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 public class LibraryController {
 
-    private final Map<Integer, Book> catalog = Map.of(
-            1, new Book(1, "Clean Code", "Robert C. Martin", 39.99),
-            2, new Book(2, "Effective Java", "Joshua Bloch", 49.99),
-            3, new Book(3, "Domain-Driven Design", "Eric Evans", 59.99));
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int ADD_BATCH_SIZE = 1000;
 
-    private final List<Book> storedBooks = new CopyOnWriteArrayList<>();
-    private final AtomicInteger idGenerator = new AtomicInteger(100);
+    private final BookRepository bookRepository;
+    private final TitleIndex titleIndex;
+    private final AuthorIndex authorIndex;
+    private final FuzzyIndex fuzzyIndex;
+    private final PriceStatistics priceStatistics;
+    private final ResponseCache responseCache;
+    private final ObjectMapper objectMapper;
+    // versions start from 0 again on restart, so ETags also carry the start time
+    private final String etagPrefix = Long.toString(System.currentTimeMillis(), 36);
+
+    public LibraryController(BookRepository bookRepository, TitleIndex titleIndex, AuthorIndex authorIndex,
+                             FuzzyIndex fuzzyIndex, PriceStatistics priceStatistics, ResponseCache responseCache,
+                             ObjectMapper objectMapper) {
+        this.bookRepository = bookRepository;
+        this.titleIndex = titleIndex;
+        this.authorIndex = authorIndex;
+        this.fuzzyIndex = fuzzyIndex;
+        this.priceStatistics = priceStatistics;
+        this.responseCache = responseCache;
+        this.objectMapper = objectMapper;
+    }
+
+    // Writes a response body
+    @FunctionalInterface
+    private interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
 
     @GetMapping("/welcome")
     public String welcome() {
         return "Welcome to the Library API";
     }
 
-    @GetMapping("/count")
-    public int totalBooks() {
-        return catalog.size() + storedBooks.size();
+    @GetMapping(value = "/count", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> totalBooks(WebRequest request) throws IOException {
+        return cached(request, bookRepository.version(), "/count",
+                out -> objectMapper.writeValue(out, bookRepository.count()));
     }
 
     @GetMapping("/price")
@@ -42,52 +80,323 @@ public class LibraryController {
         return 45.50;
     }
 
+    // Count, min, max, mean and percentiles of the current books' prices, kept up to date as
+    // books are added
+    @GetMapping("/price/stats")
+    public PriceStats priceStats() {
+        return priceStatistics.stats();
+    }
+
+    // Titles of every book, catalog first: a page with ?limit=, otherwise streamed whole
+    @GetMapping(value = "/books", params = "limit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> listBookTitlesPage(@RequestParam(required = false) String cursor,
+                                                     @RequestParam int limit, WebRequest request) throws IOException {
+        return page("/books", 0, cursor, limit, Book::getTitle, request);
+    }
+
     @GetMapping("/books")
-    public List<String> listBookTitles() {
-        return catalog.values()
-                .stream()
-                .map(Book::getTitle)
-                .toList();
+    public ResponseEntity<StreamingResponseBody> listBookTitles(@RequestParam(required = false) String cursor,
+                                                                @RequestParam(required = false) Integer limit,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                WebRequest request) {
+        return stream("/books", 0, cursor, limit, accept, Book::getTitle, request);
     }
 
     @GetMapping("/books/{id}")
     public Book getBookById(@PathVariable int id) {
-        return storedBooks.stream()
-                .filter(book -> book.getId() != null && book.getId() == id)
-                .findFirst()
-                .orElseGet(() -> {
-                    Book catalogBook = catalog.get(id);
-                    if (catalogBook != null) {
-                        return catalogBook;
-                    }
-                    throwNotFound(id);
-                    return null; // unreachable but satisfies compiler
-                });
+        Book book = bookRepository.findById(id);
+        if (book == null) {
+            throwNotFound(id);
+        }
+        return book;
     }
 
     @GetMapping("/search")
-    public String searchByTitle(@RequestParam String title) {
-        return "Search request received for title: " + title;
+    public SearchResult searchByTitle(@RequestParam String title,
+                                      @RequestParam(defaultValue = "0") int page,
+                                      @RequestParam(defaultValue = "20") int size) {
+        checkPage(page, size);
+        return titleIndex.search(title, page, size);
+    }
+
+    // Books whose title and author words are close to the query's, typos and an unfinished
+    // last word allowed ("efective jav"), best first
+    @GetMapping("/search/fuzzy")
+    public FuzzyResult fuzzySearch(@RequestParam String q,
+                                   @RequestParam(defaultValue = "20") int size) {
+        checkPage(0, size);
+        return fuzzyIndex.search(q, size);
     }
 
     @GetMapping("/author/{name}")
-    public String authorInfo(@PathVariable String name) {
-        return "Author highlight: " + name;
+    public AuthorResult authorInfo(@PathVariable String name,
+                                   @RequestParam(defaultValue = "0") int page,
+                                   @RequestParam(defaultValue = "20") int size) {
+        checkPage(page, size);
+        AuthorResult author = authorIndex.find(name, page, size);
+        if (author == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "No books by author " + name);
+        }
+        return author;
     }
 
     @PostMapping("/addbook")
     @ResponseStatus(HttpStatus.CREATED)
     public Book addBook(@RequestBody Book book) {
-        if (book.getId() == null) {
-            book.setId(idGenerator.incrementAndGet());
+        return bookRepository.save(book);
+    }
+
+    // Adds every book in a JSON array or NDJSON stream. Books are read one at a time and stored
+    // ADD_BATCH_SIZE at a time; one that does not bind or validate is reported and skipped,
+    // and the rest are still stored. Malformed JSON stops the read where it occurs.
+    @PostMapping(value = "/addbooks", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public BulkAddResult addBooks(InputStream body) throws IOException {
+        List<BulkAddResult.Item> items = new ArrayList<>();
+        List<Book> batch = new ArrayList<>(ADD_BATCH_SIZE);
+        List<Integer> batchIndexes = new ArrayList<>(ADD_BATCH_SIZE);
+        try (MappingIterator<Book> books = objectMapper.readerFor(Book.class).readValues(body)) {
+            while (true) {
+                Book book;
+                try {
+                    if (!books.hasNextValue()) {
+                        break;
+                    }
+                    book = books.nextValue();
+                } catch (DatabindException e) {
+                    // the iterator skips the rest of this value and carries on
+                    items.add(new BulkAddResult.Item(items.size(), null, BulkAddResult.Item.INVALID, e.getOriginalMessage()));
+                    continue;
+                } catch (JsonProcessingException e) {
+                    items.add(new BulkAddResult.Item(items.size(), null, BulkAddResult.Item.INVALID,
+                            "Malformed JSON, stopped reading: " + e.getOriginalMessage()));
+                    break;
+                }
+                String error = validate(book);
+                if (error != null) {
+                    items.add(new BulkAddResult.Item(items.size(), book.getId(), BulkAddResult.Item.INVALID, error));
+                    continue;
+                }
+                batchIndexes.add(items.size());
+                items.add(null); // filled in once its batch is stored
+                batch.add(book);
+                if (batch.size() == ADD_BATCH_SIZE) {
+                    saveBatch(batch, batchIndexes, items);
+                }
+            }
         }
-        storedBooks.add(book);
-        return book;
+        saveBatch(batch, batchIndexes, items);
+        return new BulkAddResult(items);
+    }
+
+    private void saveBatch(List<Book> batch, List<Integer> batchIndexes, List<BulkAddResult.Item> items) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Book> replaced = bookRepository.saveAll(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            int index = batchIndexes.get(i);
+            String status = replaced.get(i) == null ? BulkAddResult.Item.CREATED : BulkAddResult.Item.REPLACED;
+            items.set(index, new BulkAddResult.Item(index, batch.get(i).getId(), status, null));
+        }
+        batch.clear();
+        batchIndexes.clear();
+    }
+
+    // Why book cannot be stored, or null if it can
+    private static String validate(Book book) {
+        if (book.getTitle() == null || book.getTitle().isBlank()) {
+            return "title is required";
+        }
+        if (book.getPrice() != null && !(book.getPrice() >= 0 && book.getPrice() < Double.POSITIVE_INFINITY)) {
+            return "price must be a number >= 0";
+        }
+        if (book.getId() != null && book.getId() < 1) {
+            return "id must be >= 1";
+        }
+        return null;
+    }
+
+    // Added books in the order they arrived: a page with ?limit=, otherwise streamed whole
+    @GetMapping(value = "/viewbooks", params = "limit", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> viewBooksPage(@RequestParam(required = false) String cursor,
+                                                @RequestParam int limit, WebRequest request) throws IOException {
+        return page("/viewbooks", bookRepository.firstAddedPosition(), cursor, limit, Function.identity(), request);
     }
 
     @GetMapping("/viewbooks")
-    public List<Book> viewBooks() {
-        return new ArrayList<>(storedBooks);
+    public ResponseEntity<StreamingResponseBody> viewBooks(@RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) Integer limit,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                           WebRequest request) {
+        return stream("/viewbooks", bookRepository.firstAddedPosition(), cursor, limit, accept, Function.identity(),
+                request);
+    }
+
+    // Up to limit books from the cursor on (from `from` without one), as a CursorPage. The
+    // cursor is the repository position of the next book, so pages stay stable while books are
+    // added.
+    private <T> ResponseEntity<byte[]> page(String path, int from, String cursor, int limit, Function<Book, T> view,
+                                            WebRequest request) throws IOException {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        // the version first: a save after it can only add books a later version's ETag covers
+        long version = bookRepository.version();
+        int end = bookRepository.endPosition();
+        int start = parseCursor(cursor, from, end);
+        return cached(request, version, path + "?cursor=" + start + "&limit=" + limit,
+                out -> objectMapper.writeValue(out, page(start, end, limit, view)));
+    }
+
+    private <T> CursorPage<T> page(int position, int end, int limit, Function<Book, T> view) {
+        List<T> items = new ArrayList<>(Math.min(limit, end - position));
+        for (; position < end && items.size() < limit; position++) {
+            Book book = bookRepository.bookAt(position);
+            if (book != null) {
+                items.add(view.apply(book));
+            }
+        }
+        // step over replaced books, so a cursor never leads to an empty page
+        while (position < end && bookRepository.bookAt(position) == null) {
+            position++;
+        }
+        return new CursorPage<>(items, position < end ? Integer.toString(position) : null);
+    }
+
+    // The books from the cursor on, written to the response one at a time as a JSON array, or
+    // as NDJSON (one per line) if the client accepts application/x-ndjson; memory use does not
+    // grow with the number of books. Books added while streaming are left out. Like cached(),
+    // answers 304 to a client that has this version, and replays a body an earlier request
+    // wrote if it was small enough for the ResponseCache to keep.
+    private <T> ResponseEntity<StreamingResponseBody> stream(String path, int from, String cursor, Integer limit,
+                                                             String accept, Function<Book, T> view,
+                                                             WebRequest request) {
+        if (limit != null && limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be >= 1");
+        }
+        long version = bookRepository.version();
+        int end = bookRepository.endPosition();
+        int start = parseCursor(cursor, from, end);
+        boolean ndjson = acceptsNdjson(accept);
+        MediaType type = ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        String etag = etag(version, type);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        String key = path + "?cursor=" + start + "&limit=" + limit + " " + type;
+        byte[] cached = responseCache.get(version, key);
+        StreamingResponseBody body;
+        if (cached != null) {
+            body = out -> out.write(cached);
+        } else {
+            body = out -> {
+                ResponseCache.Capture capture = responseCache.capture(out);
+                writeBooks(capture, start, end, limit, ndjson, view);
+                keep(version, key, capture.captured());
+            };
+        }
+        // checkNotModified has set the ETag header
+        return ResponseEntity.ok()
+                .varyBy(HttpHeaders.ACCEPT)
+                .contentType(type)
+                .body(body);
+    }
+
+    private <T> void writeBooks(OutputStream out, int start, int end, Integer limit, boolean ndjson,
+                                Function<Book, T> view) throws IOException {
+        try (JsonGenerator generator = objectMapper.createGenerator(out)) {
+            generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            if (ndjson) {
+                generator.setRootValueSeparator(null);
+            } else {
+                generator.writeStartArray();
+            }
+            int remaining = limit == null ? Integer.MAX_VALUE : limit;
+            for (int position = start; position < end && remaining > 0; position++) {
+                Book book = bookRepository.bookAt(position);
+                if (book != null) {
+                    generator.writeObject(view.apply(book));
+                    if (ndjson) {
+                        generator.writeRaw('\n');
+                    }
+                    remaining--;
+                }
+            }
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    // A JSON read response for the library at version, read by the caller before anything the
+    // body shows: 304 if the client's If-None-Match already has this version's ETag, else the
+    // body an earlier request wrote for key at this version, else the one writer writes, kept
+    // for the next request. Repeat polls of an unchanged library cost no serialization.
+    private ResponseEntity<byte[]> cached(WebRequest request, long version, String key, BodyWriter writer)
+            throws IOException {
+        String etag = etag(version, MediaType.APPLICATION_JSON);
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
+        byte[] body = responseCache.get(version, key);
+        if (body == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writer.writeTo(out);
+            body = out.toByteArray();
+            keep(version, key, body);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    // Keeps a body written at version, unless a save since may have changed what it shows
+    private void keep(long version, String key, byte[] body) {
+        if (body != null && bookRepository.version() == version) {
+            responseCache.put(version, key, body);
+        }
+    }
+
+    // Strong: equal ETags mean byte-identical bodies, as every body is rendered from the
+    // library at one version, the same way each time
+    private String etag(long version, MediaType type) {
+        return "\"" + etagPrefix + "-" + version + "-" + type.getSubtype() + "\"";
+    }
+
+    private static int parseCursor(String cursor, int from, int end) {
+        if (cursor == null) {
+            return from;
+        }
+        try {
+            int position = Integer.parseInt(cursor);
+            if (position >= from && position <= end) {
+                return position;
+            }
+        } catch (NumberFormatException e) {
+            // rejected below
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor " + cursor);
+    }
+
+    private static boolean acceptsNdjson(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    private static void checkPage(int page, int size) {
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "page must be >= 0 and size between 1 and " + MAX_PAGE_SIZE);
+        }
     }
 
     private void throwNotFound(int id) {
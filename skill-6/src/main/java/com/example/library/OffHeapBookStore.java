@@ -0,0 +1,247 @@
+package com.example.library;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * The books in direct (off-heap) memory, one column per field, for libraries large enough
+ * that tens of millions of Book, Integer, Double and String objects would keep the garbage
+ * collector busy. Selected with library.storage=off-heap; the memory counts against
+ * -XX:MaxDirectMemorySize, which defaults to the maximum heap size.
+ *
+ * A position is a row. Rows are kept ROWS_PER_CHUNK to a direct buffer that holds the
+ * chunk's id column, then its price, author and title columns, all primitive. Titles are
+ * UTF-8 bytes in an append-only arena of direct buffers; authors are codes into a dictionary
+ * of the distinct names, the only strings left on the heap. An open-addressing table, also in
+ * direct memory, maps each id to the row of its current book. Every read decodes a new Book
+ * from its row, which dies young.
+ *
+ * Stores are serialized; reads never take a lock. A row is written before the row count is
+ * published, and its id's table slot (row and id in one long, written with release
+ * semantics) after that, so a reader that reaches a row sees all of it.
+ */
+@Component
+@ConditionalOnProperty(name = "library.storage", havingValue = "off-heap")
+public class OffHeapBookStore implements BookStore {
+
+    private static final int ROW_BITS = 16;
+    private static final int ROWS_PER_CHUNK = 1 << ROW_BITS;
+    // byte offsets of the columns in a chunk
+    private static final int IDS = 0;
+    private static final int PRICES = IDS + Integer.BYTES * ROWS_PER_CHUNK;
+    private static final int AUTHORS = PRICES + Double.BYTES * ROWS_PER_CHUNK;
+    private static final int TITLE_STARTS = AUTHORS + Integer.BYTES * ROWS_PER_CHUNK;
+    private static final int TITLE_LENGTHS = TITLE_STARTS + Long.BYTES * ROWS_PER_CHUNK;
+    private static final int CHUNK_BYTES = TITLE_LENGTHS + Integer.BYTES * ROWS_PER_CHUNK;
+    private static final int TITLE_CHUNK_BITS = 20;
+    private static final int TITLE_CHUNK_BYTES = 1 << TITLE_CHUNK_BITS;
+    // a null price: a NaN no JSON number turns into
+    private static final long NO_PRICE = 0x7ff8_0000_0000_0001L;
+    private static final int NO_AUTHOR = -1;
+    private static final int NO_TITLE = -1;
+
+    private final AppendLog<ByteBuffer> chunks = new AppendLog<>();
+    private final AppendLog<ByteBuffer> titleChunks = new AppendLog<>();
+    private final AppendLog<String> authors = new AppendLog<>();
+    // guarded by this
+    private final Map<String, Integer> authorCodes = new HashMap<>();
+    private long titleEnd;
+    private volatile int size;
+    private volatile int count;
+    private volatile IdTable ids = new IdTable(1024);
+
+    // id -> row, with linear probing. A slot holds (row + 1) << 32 | id, or 0 when empty, so one
+    // atomic write fills or moves it.
+    private static final class IdTable {
+        private static final VarHandle SLOT = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+        // slots are addressed by int byte offsets
+        static final int MAX_CAPACITY = 1 << 27;
+
+        final ByteBuffer slots;
+        final int mask;
+        int used; // written only by the storing thread
+
+        IdTable(int capacity) {
+            slots = ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+            mask = capacity - 1;
+        }
+
+        // The row of the book with this id, or -1
+        int row(int id) {
+            for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+                long slot = (long) SLOT.getAcquire(slots, i * Long.BYTES);
+                if (slot == 0) {
+                    return -1;
+                }
+                if ((int) slot == id) {
+                    return (int) (slot >>> 32) - 1;
+                }
+            }
+        }
+
+        // Points id at row, and returns the row it pointed at before, or -1
+        int put(int id, int row) {
+            long entry = (long) (row + 1) << 32 | (id & 0xffff_ffffL);
+            for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+                long slot = slots.getLong(i * Long.BYTES);
+                if (slot == 0 || (int) slot == id) {
+                    SLOT.setRelease(slots, i * Long.BYTES, entry);
+                    if (slot == 0) {
+                        used++;
+                        return -1;
+                    }
+                    return (int) (slot >>> 32) - 1;
+                }
+            }
+        }
+
+        boolean isFull() {
+            return used >= (mask + 1) / 4 * 3;
+        }
+
+        IdTable grow() {
+            if (mask + 1 == MAX_CAPACITY) {
+                throw new IllegalStateException("OffHeapBookStore id table is full");
+            }
+            IdTable bigger = new IdTable((mask + 1) * 2);
+            for (int i = 0; i <= mask; i++) {
+                long slot = slots.getLong(i * Long.BYTES);
+                if (slot != 0) {
+                    bigger.put((int) slot, (int) (slot >>> 32) - 1);
+                }
+            }
+            return bigger;
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    @Override
+    public Book findById(int id) {
+        int row = ids.row(id);
+        return row < 0 ? null : decode(row);
+    }
+
+    @Override
+    public synchronized List<Book> storeAll(List<Book> batch, AtomicInteger idGenerator) {
+        int nextId = BookStore.reserveIds(batch, idGenerator);
+        List<Book> replaced = new ArrayList<>(batch.size());
+        for (Book book : batch) {
+            if (book.getId() == null) {
+                // an id in the block may already be taken by a client-chosen one
+                int id = nextId++;
+                while (ids.row(id) >= 0) {
+                    id = idGenerator.incrementAndGet();
+                }
+                book.setId(id);
+            }
+            int row = size;
+            if (row == Integer.MAX_VALUE - 1) {
+                throw new IllegalStateException("OffHeapBookStore is full");
+            }
+            write(row, book);
+            size = row + 1;
+            if (ids.isFull()) {
+                ids = ids.grow();
+            }
+            int previous = ids.put(book.getId(), row);
+            if (previous < 0) {
+                count++;
+                replaced.add(null);
+            } else {
+                replaced.add(decode(previous));
+            }
+        }
+        return replaced;
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Book bookAt(int position) {
+        int id = chunks.get(position >>> ROW_BITS).getInt(IDS + Integer.BYTES * (position & (ROWS_PER_CHUNK - 1)));
+        return ids.row(id) == position ? decode(position) : null;
+    }
+
+    private void write(int row, Book book) {
+        if (row >>> ROW_BITS == chunks.size()) {
+            chunks.append(ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder()));
+        }
+        ByteBuffer chunk = chunks.get(row >>> ROW_BITS);
+        int r = row & (ROWS_PER_CHUNK - 1);
+        chunk.putInt(IDS + Integer.BYTES * r, book.getId());
+        chunk.putLong(PRICES + Double.BYTES * r,
+                book.getPrice() == null ? NO_PRICE : Double.doubleToRawLongBits(book.getPrice()));
+        chunk.putInt(AUTHORS + Integer.BYTES * r,
+                book.getAuthor() == null ? NO_AUTHOR : authorCodes.computeIfAbsent(book.getAuthor(), authors::append));
+        if (book.getTitle() == null) {
+            chunk.putInt(TITLE_LENGTHS + Integer.BYTES * r, NO_TITLE);
+        } else {
+            byte[] title = book.getTitle().getBytes(StandardCharsets.UTF_8);
+            chunk.putLong(TITLE_STARTS + Long.BYTES * r, titleEnd);
+            chunk.putInt(TITLE_LENGTHS + Integer.BYTES * r, title.length);
+            appendTitle(title);
+        }
+    }
+
+    private Book decode(int row) {
+        ByteBuffer chunk = chunks.get(row >>> ROW_BITS);
+        int r = row & (ROWS_PER_CHUNK - 1);
+        long price = chunk.getLong(PRICES + Double.BYTES * r);
+        int author = chunk.getInt(AUTHORS + Integer.BYTES * r);
+        int titleLength = chunk.getInt(TITLE_LENGTHS + Integer.BYTES * r);
+        return new Book(chunk.getInt(IDS + Integer.BYTES * r),
+                titleLength == NO_TITLE ? null : readTitle(chunk.getLong(TITLE_STARTS + Long.BYTES * r), titleLength),
+                author == NO_AUTHOR ? null : authors.get(author),
+                price == NO_PRICE ? null : Double.longBitsToDouble(price));
+    }
+
+    // Titles run on from one arena chunk into the next
+    private void appendTitle(byte[] title) {
+        for (int copied = 0; copied < title.length; ) {
+            int chunk = (int) (titleEnd >>> TITLE_CHUNK_BITS);
+            int offset = (int) titleEnd & (TITLE_CHUNK_BYTES - 1);
+            if (chunk == titleChunks.size()) {
+                titleChunks.append(ByteBuffer.allocateDirect(TITLE_CHUNK_BYTES));
+            }
+            int length = Math.min(title.length - copied, TITLE_CHUNK_BYTES - offset);
+            titleChunks.get(chunk).put(offset, title, copied, length);
+            copied += length;
+            titleEnd += length;
+        }
+    }
+
+    private String readTitle(long start, int length) {
+        byte[] title = new byte[length];
+        for (int copied = 0; copied < length; ) {
+            long at = start + copied;
+            int offset = (int) at & (TITLE_CHUNK_BYTES - 1);
+            int n = Math.min(length - copied, TITLE_CHUNK_BYTES - offset);
+            titleChunks.get((int) (at >>> TITLE_CHUNK_BITS)).get(offset, title, copied, n);
+            copied += n;
+        }
+        return new String(title, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.library;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Live statistics over the prices of the current books, for /price/stats. Every stored book
+ * updates them as it is indexed, and a replaced book's price is taken back out, so a read
+ * never looks at the books at all.
+ *
+ * Count and total are LongAdder/DoubleAdder, which writers update without contending. Min
+ * and max are the ends of a skip list counting the books at each distinct price, so they stay
+ * exact when the cheapest or dearest book is replaced; prices in cents keep it small, and
+ * reading its ends is no scan. Percentiles come from a DDSketch-style sketch: one counter per
+ * logarithmic bucket, with bounds a factor GAMMA apart, so the value a bucket reports is
+ * within RELATIVE_ACCURACY (1%) of every price in it, and so is any percentile. The bucket
+ * count is fixed, so a read costs the same at any library size.
+ * Prices from a cent to MAX_INDEXED (either sign) get that accuracy; smaller and larger ones
+ * share the end buckets. Prices that are not finite numbers are left out.
+ */
+@Component
+public class PriceStatistics implements BookIndex {
+
+    static final double RELATIVE_ACCURACY = 0.01;
+    static final int[] PERCENTILES = {50, 90, 95, 99};
+    private static final double MIN_INDEXED = 0.01;
+    private static final double MAX_INDEXED = 1e9;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    // bucket k of a magnitude holds (GAMMA^(k + MIN_KEY - 1), GAMMA^(k + MIN_KEY)]
+    private static final int MIN_KEY = (int) Math.ceil(Math.log(MIN_INDEXED) / LOG_GAMMA);
+    private static final int KEYS = (int) Math.ceil(Math.log(MAX_INDEXED) / LOG_GAMMA) - MIN_KEY + 1;
+    // slots in ascending price order: negative keys mirrored below ZERO, positive ones above
+    private static final int ZERO = KEYS;
+
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder total = new DoubleAdder();
+    // price to the number of current books with it
+    private final ConcurrentSkipListMap<Double, Long> prices = new ConcurrentSkipListMap<>();
+    private final AtomicLongArray buckets = new AtomicLongArray(2 * KEYS + 1);
+
+    // No lock: the repository makes indexed() calls one at a time
+    @Override
+    public void indexed(Book book, Book replaced) {
+        if (replaced != null && counted(replaced.getPrice())) {
+            double price = replaced.getPrice();
+            count.decrement();
+            total.add(-price);
+            prices.computeIfPresent(price, (key, books) -> books > 1 ? books - 1 : null);
+            buckets.decrementAndGet(slot(price));
+        }
+        if (counted(book.getPrice())) {
+            double price = book.getPrice();
+            count.increment();
+            total.add(price);
+            prices.merge(price, 1L, Long::sum);
+            buckets.incrementAndGet(slot(price));
+        }
+    }
+
+    private static boolean counted(Double price) {
+        return price != null && Double.isFinite(price);
+    }
+
+    private static int slot(double price) {
+        if (price > 0) {
+            return ZERO + 1 + key(price);
+        }
+        return price < 0 ? ZERO - 1 - key(-price) : ZERO;
+    }
+
+    private static int key(double magnitude) {
+        int key = (int) Math.ceil(Math.log(magnitude) / LOG_GAMMA) - MIN_KEY;
+        return Math.max(0, Math.min(KEYS - 1, key));
+    }
+
+    // The price a slot stands for, within RELATIVE_ACCURACY of any price in it
+    private static double representative(int slot) {
+        if (slot == ZERO) {
+            return 0;
+        }
+        int key = slot > ZERO ? slot - ZERO - 1 : ZERO - 1 - slot;
+        double magnitude = 2 * Math.pow(GAMMA, key + MIN_KEY) / (GAMMA + 1);
+        return slot > ZERO ? magnitude : -magnitude;
+    }
+
+    // Writes that race with a read may show up in some of the figures and not yet in others
+    public PriceStats stats() {
+        long[] counts = new long[buckets.length()];
+        long counted = 0;
+        int lowest = -1;
+        for (int slot = 0; slot < counts.length; slot++) {
+            long n = buckets.get(slot);
+            if (n > 0) {
+                counts[slot] = n;
+                counted += n;
+                if (lowest < 0) {
+                    lowest = slot;
+                }
+            }
+        }
+        long books = count.sum();
+        Map.Entry<Double, Long> cheapest = prices.firstEntry();
+        Map.Entry<Double, Long> dearest = prices.lastEntry();
+        if (counted == 0 || books <= 0 || cheapest == null || dearest == null) {
+            return new PriceStats(0, null, null, null, Map.of(), RELATIVE_ACCURACY);
+        }
+        double low = cheapest.getKey();
+        double high = dearest.getKey();
+
+        Map<String, Double> percentiles = new LinkedHashMap<>();
+        int slot = lowest;
+        long below = counts[slot];
+        for (int percentile : PERCENTILES) {
+            // the price with this many prices below it
+            long rank = (long) (percentile / 100.0 * (counted - 1));
+            while (below <= rank) {
+                below += counts[++slot];
+            }
+            double value = Math.max(low, Math.min(high, representative(slot)));
+            percentiles.put("p" + percentile, value);
+        }
+        return new PriceStats(books, low, high, total.sum() / books, percentiles, RELATIVE_ACCURACY);
+    }
+}
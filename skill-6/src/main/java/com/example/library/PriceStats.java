@@ -0,0 +1,50 @@
+package com.example.library;
+
+import java.util.Map;
+
+// Statistics over the prices of the current books, for /price/stats. Books without a price
+// are not counted; min, max and mean are null while no book has one.
+public class PriceStats {
+    private final long count;
+    private final Double min;
+    private final Double max;
+    private final Double mean;
+    private final Map<String, Double> percentiles;
+    private final double relativeAccuracy;
+
+    public PriceStats(long count, Double min, Double max, Double mean, Map<String, Double> percentiles,
+                      double relativeAccuracy) {
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.mean = mean;
+        this.percentiles = percentiles;
+        this.relativeAccuracy = relativeAccuracy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public Double getMin() {
+        return min;
+    }
+
+    public Double getMax() {
+        return max;
+    }
+
+    public Double getMean() {
+        return mean;
+    }
+
+    // "p50", "p90", "p95", "p99" to the estimated price
+    public Map<String, Double> getPercentiles() {
+        return percentiles;
+    }
+
+    // Bound on each percentile's error, relative to the exact value
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.library;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Serialized read responses, kept as bytes for one library version (BookRepository.version)
+ * so repeat requests skip serialization. The first put for a newer version drops every body
+ * of the older one at once. Bodies larger than maxBodySize are not kept, and once the bodies
+ * of a version total maxSize no more are added.
+ */
+@Component
+public class ResponseCache {
+
+    private final int maxBodySize;
+    private final long maxSize;
+    private volatile Generation generation = new Generation(-1);
+
+    private static final class Generation {
+        final long version;
+        final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+        final AtomicLong size = new AtomicLong();
+
+        Generation(long version) {
+            this.version = version;
+        }
+    }
+
+    public ResponseCache(@Value("${library.response-cache.max-body-size:4MB}") DataSize maxBodySize,
+                         @Value("${library.response-cache.max-size:64MB}") DataSize maxSize) {
+        this.maxBodySize = (int) Math.min(maxBodySize.toBytes(), Integer.MAX_VALUE - 8);
+        this.maxSize = maxSize.toBytes();
+    }
+
+    // The body kept under key for version, or null
+    public byte[] get(long version, String key) {
+        Generation current = generation;
+        return current.version == version ? current.bodies.get(key) : null;
+    }
+
+    // Keeps body under key for version, unless a newer version has been seen or it does not fit
+    public void put(long version, String key, byte[] body) {
+        if (body.length > maxBodySize) {
+            return;
+        }
+        Generation current = generation;
+        while (current.version < version) {
+            synchronized (this) {
+                if (generation.version < version) {
+                    generation = new Generation(version);
+                }
+            }
+            current = generation;
+        }
+        if (current.version != version) {
+            return;
+        }
+        if (current.size.addAndGet(body.length) > maxSize) {
+            current.size.addAndGet(-body.length);
+            return;
+        }
+        if (current.bodies.putIfAbsent(key, body) != null) {
+            current.size.addAndGet(-body.length);
+        }
+    }
+
+    // Passes everything written on to out and keeps a copy, up to maxBodySize, for put
+    public Capture capture(OutputStream out) {
+        return new Capture(out, maxBodySize);
+    }
+
+    public static final class Capture extends OutputStream {
+        private final OutputStream out;
+        private final int limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        private Capture(OutputStream out, int limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                if (copy.size() >= limit) {
+                    copy = null;
+                } else {
+                    copy.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                if (copy.size() + len > limit) {
+                    copy = null; // too big to keep; stop copying
+                } else {
+                    copy.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        // Everything written, or null if it was more than the limit
+        public byte[] captured() {
+            return copy == null ? null : copy.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.library;
+
+import java.util.List;
+
+// One page of /search results
+public class SearchResult {
+    private final String query;
+    private final int page;
+    private final int size;
+    private final boolean hasMore;
+    private final List<Book> books;
+
+    public SearchResult(String query, int page, int size, boolean hasMore, List<Book> books) {
+        this.query = query;
+        this.page = page;
+        this.size = size;
+        this.hasMore = hasMore;
+        this.books = books;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.library;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// How the indexes compare text: case- and accent-insensitively, word by word
+final class SearchText {
+
+    private SearchText() {
+    }
+
+    // Lower-cased, with accents removed: "Émile Zola" -> "emile zola"
+    static String fold(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) >= 0x80) {
+                // decompose "é" into "e" + combining accent, then drop the accents
+                return Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+            }
+        }
+        return lower; // ASCII needs no decomposition
+    }
+
+    // Folded runs of letters and digits
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String folded = fold(text);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // The words of text joined by single spaces, so "Robert C. Martin" and "robert c martin"
+    // get the same key
+    static String key(String text) {
+        return String.join(" ", words(text));
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.library;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Title search: an inverted index from each title word to the books containing it, plus a
+ * prefix trie over those words for type-ahead.
+ *
+ * A query matches books whose title contains every query word, ignoring case and accents;
+ * the last word may also be the start of a title word ("effective ja" finds "Effective
+ * Java"). Shorter titles rank first, then older books. Every indexed book gets the next doc
+ * number, and each word's postings are ascending doc numbers kept in separate lists by title
+ * length. A page is produced by intersecting those lists bucket by bucket, galloping past
+ * runs that cannot match, and stopping once the page is full; only the matches themselves
+ * are looked up.
+ */
+@Component
+public class TitleIndex implements BookIndex {
+
+    // Titles of this many words or more share the last rank bucket
+    private static final int LENGTH_BUCKETS = 8;
+    // A prefix is expanded to at most this many words, shortest first
+    static final int MAX_PREFIX_EXPANSIONS = 64;
+    // See search: a prefix's docs are collected into a bitset when they are at most this many
+    // times the rarest query word's
+    private static final int PREFIX_BITSET_RATIO = 64;
+    private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+    private final TrieNode trie = new TrieNode();
+    // doc number -> indexed book
+    private final AppendLog<IndexedBook> docs = new AppendLog<>();
+    // latest indexed version of every book, so the one it replaces can be marked stale
+    private final Map<Integer, IndexedBook> current = new ConcurrentHashMap<>();
+    private int nextTermId;
+
+    private static final class IndexedBook {
+        final Book book;
+        final int[] words; // term ids of the distinct title words
+        volatile boolean stale;
+
+        IndexedBook(Book book, int[] words) {
+            this.book = book;
+            this.words = words;
+        }
+
+        // candidates must be sorted
+        boolean containsAny(int[] candidates) {
+            for (int word : words) {
+                if (Arrays.binarySearch(candidates, word) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Postings {
+        final int id;
+        final AtomicReferenceArray<IntAppendLog> byLength = new AtomicReferenceArray<>(LENGTH_BUCKETS);
+
+        Postings(int id) {
+            this.id = id;
+        }
+
+        void add(int bucket, int doc) {
+            IntAppendLog list = byLength.get(bucket);
+            if (list == null) {
+                list = new IntAppendLog();
+                byLength.set(bucket, list);
+            }
+            list.append(doc);
+        }
+    }
+
+    private static final class TrieNode {
+        final Map<Character, TrieNode> children = new ConcurrentHashMap<>(4);
+        volatile String word;
+    }
+
+    // Indexing is serialized so doc numbers reach every postings list in ascending order;
+    // searches never wait for it
+    @Override
+    public synchronized void indexed(Book book, Book replaced) {
+        List<String> titleWords = SearchText.words(book.getTitle()).stream().distinct().toList();
+        int[] words = new int[titleWords.size()];
+        IndexedBook entry = new IndexedBook(book, words);
+        int doc = docs.append(entry);
+        int bucket = Math.min(words.length, LENGTH_BUCKETS) - 1;
+        for (int i = 0; i < words.length; i++) {
+            Postings list = postings.computeIfAbsent(titleWords.get(i), w -> {
+                addToTrie(w);
+                return new Postings(nextTermId++);
+            });
+            words[i] = list.id;
+            list.add(bucket, doc);
+        }
+        // only now, so the book never drops out of results while being replaced
+        IndexedBook previous = current.put(book.getId(), entry);
+        if (previous != null) {
+            previous.stale = true;
+        }
+    }
+
+    private void addToTrie(String word) {
+        TrieNode node = trie;
+        for (int i = 0; i < word.length(); i++) {
+            node = node.children.computeIfAbsent(word.charAt(i), c -> new TrieNode());
+        }
+        node.word = word;
+    }
+
+    // Indexed words starting with prefix, shortest first, at most MAX_PREFIX_EXPANSIONS
+    List<String> completions(String prefix) {
+        TrieNode node = trie;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        List<String> completions = new ArrayList<>();
+        if (node == null) {
+            return completions;
+        }
+        ArrayDeque<TrieNode> queue = new ArrayDeque<>();
+        queue.add(node);
+        while (!queue.isEmpty() && completions.size() < MAX_PREFIX_EXPANSIONS) {
+            TrieNode next = queue.poll();
+            if (next.word != null) {
+                completions.add(next.word);
+            }
+            queue.addAll(next.children.values());
+        }
+        return completions;
+    }
+
+    // Page `page` (from 0) of `size` books matching query, best matches first
+    public SearchResult search(String query, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("page must be >= 0 and size >= 1");
+        }
+        List<String> terms = SearchText.words(query);
+        if (terms.isEmpty()) {
+            return new SearchResult(query, page, size, false, List.of());
+        }
+        List<Postings> exact = new ArrayList<>();
+        for (String word : new LinkedHashSet<>(terms.subList(0, terms.size() - 1))) {
+            Postings list = postings.get(word);
+            if (list == null) {
+                return new SearchResult(query, page, size, false, List.of());
+            }
+            exact.add(list);
+        }
+        List<Postings> completions = new ArrayList<>();
+        for (String word : completions(terms.get(terms.size() - 1))) {
+            Postings list = postings.get(word);
+            if (list != null) { // null only while the word is still being added
+                completions.add(list);
+            }
+        }
+        int[] completionIds = completions.stream().mapToInt(list -> list.id).sorted().toArray();
+
+        long skip = (long) page * size;
+        List<Book> books = new ArrayList<>(size);
+        BitSet prefixDocs = null; // filled bucket by bucket when used
+        for (int bucket = 0; bucket < LENGTH_BUCKETS; bucket++) {
+            // intersect from the shortest lists; the others only gallop to its docs
+            List<DocCursor> cursors = new ArrayList<>();
+            for (Postings list : exact) {
+                cursors.add(new DocCursor(List.of(list), bucket));
+            }
+            cursors.sort(Comparator.comparingLong(DocCursor::length));
+            // The prefix's union of up to MAX_PREFIX_EXPANSIONS lists is costly to gallop, so it
+            // only takes part when it is the shortest. Otherwise it is OR-ed into a bitset when
+            // that is cheap next to the shortest word's postings, or else those postings' matches
+            // are checked against their own title words, at a cache miss or two each.
+            DocCursor prefixCursor = new DocCursor(completions, bucket);
+            boolean prefixInCursors = cursors.isEmpty() || prefixCursor.length() <= cursors.get(0).length();
+            boolean prefixAsBits = !prefixInCursors
+                    && prefixCursor.length() <= PREFIX_BITSET_RATIO * cursors.get(0).length();
+            if (prefixInCursors) {
+                cursors.add(0, prefixCursor);
+            } else if (prefixAsBits) {
+                if (prefixDocs == null) {
+                    prefixDocs = new BitSet(docs.size());
+                }
+                prefixCursor.addTo(prefixDocs);
+            }
+            if (cursors.get(0).length() == 0) {
+                continue;
+            }
+            DocCursor driver = cursors.get(0);
+            int doc = driver.advance(0);
+            while (doc != NO_MORE_DOCS) {
+                int next = doc;
+                for (int i = 1; i < cursors.size() && next == doc; i++) {
+                    next = cursors.get(i).advance(doc);
+                }
+                if (next != doc) {
+                    doc = driver.advance(next);
+                    continue;
+                }
+                boolean prefixMatches = prefixInCursors
+                        || (prefixAsBits ? prefixDocs.get(doc) : docs.get(doc).containsAny(completionIds));
+                IndexedBook match = prefixMatches ? docs.get(doc) : null;
+                if (match != null && !match.stale) {
+                    if (skip > 0) {
+                        skip--;
+                    } else if (books.size() < size) {
+                        books.add(match.book);
+                    } else {
+                        return new SearchResult(query, page, size, true, books);
+                    }
+                }
+                doc = driver.advance(doc + 1);
+            }
+        }
+        return new SearchResult(query, page, size, false, books);
+    }
+
+    // The docs in one length bucket of one or more postings, ascending and without duplicates.
+    // Each list is read up to the size it had when the cursor was made. The lists sit in a
+    // min-heap on their current doc, so advancing only touches lists that are behind.
+    private static final class DocCursor {
+        private final IntAppendLog[] lists;
+        private final int[] limits;
+        private final int[] positions;
+        private final int[] heads;
+        // indexes into the arrays above of the lists not yet exhausted, heap-ordered by head
+        private final int[] heap;
+        private int heapSize;
+        private final long length;
+
+        DocCursor(List<Postings> group, int bucket) {
+            int n = group.size();
+            lists = new IntAppendLog[n];
+            limits = new int[n];
+            positions = new int[n];
+            heads = new int[n];
+            heap = new int[n];
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                IntAppendLog list = group.get(i).byLength.get(bucket);
+                int limit = list == null ? 0 : list.size();
+                if (limit > 0) {
+                    lists[i] = list;
+                    limits[i] = limit;
+                    heads[i] = list.get(0);
+                    heap[heapSize] = i;
+                    siftUp(heapSize++);
+                    total += limit;
+                }
+            }
+            length = total;
+        }
+
+        long length() {
+            return length;
+        }
+
+        // Sets the bit of every doc, from the start of the lists
+        void addTo(BitSet bits) {
+            for (int i = 0; i < lists.length; i++) {
+                for (int j = 0; j < limits[i]; j++) {
+                    bits.set(lists[i].get(j));
+                }
+            }
+        }
+
+        // The first doc >= target, or NO_MORE_DOCS
+        int advance(int target) {
+            while (heapSize > 0 && heads[heap[0]] < target) {
+                int list = heap[0];
+                positions[list] = lists[list].seek(positions[list], limits[list], target);
+                if (positions[list] < limits[list]) {
+                    heads[list] = lists[list].get(positions[list]);
+                } else {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(0);
+            }
+            return heapSize == 0 ? NO_MORE_DOCS : heads[heap[0]];
+        }
+
+        private void siftUp(int at) {
+            int list = heap[at];
+            while (at > 0) {
+                int parent = (at - 1) >>> 1;
+                if (heads[heap[parent]] <= heads[list]) {
+                    break;
+                }
+                heap[at] = heap[parent];
+                at = parent;
+            }
+            heap[at] = list;
+        }
+
+        private void siftDown(int at) {
+            if (heapSize == 0) {
+                return;
+            }
+            int list = heap[at];
+            while (true) {
+                int child = 2 * at + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heads[heap[child + 1]] < heads[heap[child]]) {
+                    child++;
+                }
+                if (heads[list] <= heads[heap[child]]) {
+                    break;
+                }
+                heap[at] = heap[child];
+                at = child;
+            }
+            heap[at] = list;
+        }
+    }
+}
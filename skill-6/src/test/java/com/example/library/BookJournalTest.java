@@ -0,0 +1,323 @@
+package com.example.library;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Crash recovery: what a restarted BookRepository gets back from the journal segments and
+// snapshots an earlier one left behind, torn and leftover files included.
+class BookJournalTest {
+
+    // the smallest segment, so a few hundred books span several
+    private static final DataSize SEGMENT_SIZE = DataSize.ofKilobytes(4);
+
+    @TempDir
+    Path directory;
+
+    private final List<BookJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void closeJournals() {
+        journals.forEach(BookJournal::close);
+    }
+
+    private BookJournal journal() {
+        BookJournal journal = new BookJournal(directory, SEGMENT_SIZE, true, Duration.ZERO);
+        journals.add(journal);
+        return journal;
+    }
+
+    private BookRepository repository(BookJournal journal) {
+        return new BookRepository(List.of(), Optional.of(journal));
+    }
+
+    // A restart: the old journal is closed as at shutdown, and a new repository recovers
+    private BookRepository restart(BookJournal old) {
+        old.close();
+        return repository(journal());
+    }
+
+    private static List<Book> positions(BookRepository repository) {
+        List<Book> books = new ArrayList<>();
+        for (int position = 0; position < repository.endPosition(); position++) {
+            books.add(repository.bookAt(position));
+        }
+        return books;
+    }
+
+    private static void assertSameBooks(List<Book> expected, List<Book> actual) {
+        assertEquals(expected.size(), actual.size(), "positions");
+        for (int i = 0; i < expected.size(); i++) {
+            Book want = expected.get(i);
+            Book got = actual.get(i);
+            if (want == null) {
+                assertNull(got, "position " + i);
+            } else {
+                assertEquals(List.of(want.getId(), String.valueOf(want.getTitle()), String.valueOf(want.getAuthor()),
+                                String.valueOf(want.getPrice())),
+                        List.of(got.getId(), String.valueOf(got.getTitle()), String.valueOf(got.getAuthor()),
+                                String.valueOf(got.getPrice())), "position " + i);
+            }
+        }
+    }
+
+    private static Book book(int i) {
+        // every field in turn left out, and titles long enough to roll segments
+        return new Book(null, i % 7 == 0 ? null : "Title " + i + " " + "x".repeat(i % 50),
+                i % 5 == 0 ? null : "Author " + i % 13, i % 3 == 0 ? null : i + 0.25);
+    }
+
+    private List<Path> files(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().toList();
+        }
+    }
+
+    @Test
+    void replaysSavesAcrossSegmentsWithTheirPositions() throws IOException {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        for (int i = 0; i < 300; i++) {
+            repository.save(book(i));
+        }
+        repository.saveAll(IntStream.range(300, 350).mapToObj(BookJournalTest::book).toList());
+        // replacements, of added books and of a catalog one
+        repository.save(new Book(110, "Replaced", "Someone", 1.0));
+        repository.save(new Book(2, "Effective Java, 3rd edition", "Joshua Bloch", 54.99));
+        List<Book> before = positions(repository);
+        assertTrue(files(".log").size() > 1, "books span several segments");
+
+        BookRepository restarted = restart(journal);
+
+        assertSameBooks(before, positions(restarted));
+        assertEquals(repository.count(), restarted.count());
+        assertEquals("Replaced", restarted.findById(110).getTitle());
+        // new books carry on from the highest restored id
+        Book next = restarted.save(new Book(null, "Next", "Author", 1.0));
+        assertTrue(next.getId() > before.stream().filter(Objects::nonNull).mapToInt(Book::getId).max().getAsInt());
+    }
+
+    @Test
+    void replaysConcurrentSavesInTheOrderTheyWereStored() throws Exception {
+        BookJournal journal = journal();
+        // a slow index holds each writer for a random while between storing its book and
+        // journaling it, where the others would overtake it if that were not one ordered step
+        BookIndex slow = (book, replaced) -> LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(1_000_000));
+        BookRepository repository = new BookRepository(List.of(slow), Optional.of(journal));
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 100; i++) {
+                    // every thread keeps replacing the same few ids
+                    repository.save(new Book(1000 + i % 10, "Thread " + thread + " save " + i, "Author", (double) i));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        pool.shutdown();
+        List<Book> before = positions(repository);
+
+        BookRepository restarted = restart(journal);
+
+        assertSameBooks(before, positions(restarted));
+        for (int id = 1000; id < 1010; id++) {
+            assertEquals(repository.findById(id).getTitle(), restarted.findById(id).getTitle(), "book " + id);
+        }
+    }
+
+    @Test
+    void rejectsABookTooLargeForTheJournalBeforeStoringIt() {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        repository.save(new Book(null, "Before", "Author", 1.0));
+        List<Book> before = positions(repository);
+        long version = repository.version();
+
+        Book tooLarge = new Book(null, "x".repeat((int) SEGMENT_SIZE.toBytes()), "Author", 2.0);
+        assertThrows(IllegalArgumentException.class, () -> repository.saveAll(List.of(book(1), tooLarge)));
+
+        // neither book of the batch was stored, indexed or counted
+        assertSameBooks(before, positions(repository));
+        assertEquals(version, repository.version());
+        assertNull(tooLarge.getId());
+        assertSameBooks(before, positions(restart(journal)));
+    }
+
+    @Test
+    void storesNothingWhenANewSegmentCannotBeStarted() throws IOException {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        repository.save(new Book(null, "Before", "Author", 1.0));
+        List<Book> before = positions(repository);
+        // the next segment's name is taken, so rolling over to it fails
+        Path blocker = Files.createFile(directory.resolve(String.format("segment-%012d.log", 1)));
+        // and the batch is more than a whole segment, so it needs a new one
+        List<Book> batch = IntStream.range(0, 100).mapToObj(BookJournalTest::book).toList();
+
+        assertThrows(UncheckedIOException.class, () -> repository.saveAll(batch));
+        assertSameBooks(before, positions(repository));
+
+        // once it can, the batch goes to one segment of its own, larger than the others
+        Files.delete(blocker);
+        repository.saveAll(batch);
+        List<Book> after = positions(repository);
+        assertEquals(before.size() + batch.size(), after.size());
+        assertTrue(Files.size(files(".log").get(1)) > SEGMENT_SIZE.toBytes());
+        assertSameBooks(after, positions(restart(journal)));
+    }
+
+    @Test
+    void dropsATornRecordAtTheEndOfTheLastSegment() throws IOException {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        for (int i = 0; i < 5; i++) {
+            repository.save(new Book(null, "Book " + i, "Author", 10.0 + i));
+        }
+        List<Book> before = positions(repository);
+        journal.close();
+
+        // a crash while appending: a record header whose payload never fully arrived
+        Path segment = files(".log").get(files(".log").size() - 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+            channel.read(contents, 0);
+            int end = 0;
+            while (contents.getInt(end) > 0) {
+                end += 8 + contents.getInt(end);
+            }
+            channel.write(ByteBuffer.allocate(12).putInt(40).putInt(0x12345678).putInt(7).flip(), end);
+        }
+
+        BookRepository restarted = repository(journal());
+
+        assertSameBooks(before, positions(restarted));
+        // and it journals on from there
+        restarted.save(new Book(null, "After the crash", "Author", 1.0));
+        List<Book> after = positions(restarted);
+        assertSameBooks(after, positions(restart(journals.get(journals.size() - 1))));
+    }
+
+    @Test
+    void dropsARecordWithABadChecksumAndEverythingAfterIt() throws IOException {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        for (int i = 0; i < 3; i++) {
+            repository.save(new Book(null, "Book " + i, "Author", 10.0 + i));
+        }
+        journal.close();
+
+        Path segment = files(".log").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            int second = 8 + header.getInt(0);
+            // flip a byte in the second record's payload
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, second + 10);
+            channel.write(ByteBuffer.wrap(new byte[] {(byte) ~b.get(0)}), second + 10);
+        }
+
+        BookRepository restarted = repository(journal());
+
+        assertEquals(BookRepository.CATALOG.size() + 1, restarted.endPosition());
+        assertEquals("Book 0", restarted.bookAt(restarted.firstAddedPosition()).getTitle());
+    }
+
+    @Test
+    void snapshotReplacesTheSegmentsBeforeItAndRestoresWithTheSegmentsAfter() throws IOException {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        for (int i = 0; i < 200; i++) {
+            repository.save(book(i));
+        }
+        repository.save(new Book(105, "Replaced before the snapshot", "Someone", 2.0));
+        List<Path> segmentsBefore = files(".log");
+        assertTrue(segmentsBefore.size() > 1);
+
+        assertTrue(journal.snapshot(() -> addedBooks(repository)));
+        assertFalse(journal.snapshot(() -> addedBooks(repository)), "nothing saved since");
+        assertEquals(1, files(".dat").size());
+        for (Path segment : segmentsBefore) {
+            assertFalse(Files.exists(segment), segment + " is covered by the snapshot");
+        }
+
+        for (int i = 200; i < 250; i++) {
+            repository.save(book(i));
+        }
+        repository.save(new Book(120, "Replaced after the snapshot", "Someone", 3.0));
+        List<Book> current = positions(repository).stream().filter(Objects::nonNull).toList();
+
+        BookRepository restarted = restart(journal);
+
+        // the snapshot leaves the books replaced before it out, so only the current ones come
+        // back, in order; 120 was replaced after it, so its snapshot position is left empty
+        List<Book> restored = positions(restarted);
+        assertSameBooks(current, restored.stream().filter(Objects::nonNull).toList());
+        assertEquals(current.size() + 1, restored.size());
+        assertEquals("Replaced before the snapshot", restarted.findById(105).getTitle());
+        assertEquals("Replaced after the snapshot", restarted.findById(120).getTitle());
+    }
+
+    @Test
+    void ignoresAndDeletesAnUnfinishedSnapshot() throws IOException {
+        BookJournal journal = journal();
+        BookRepository repository = repository(journal);
+        for (int i = 0; i < 20; i++) {
+            repository.save(book(i));
+        }
+        List<Book> before = positions(repository);
+        journal.close();
+        // a snapshot that crashed before its rename
+        Files.write(directory.resolve("snapshot-000000000009.dat.tmp"), new byte[] {0, 0, 0, 99, 1, 2, 3});
+
+        BookRepository restarted = repository(journal());
+
+        assertSameBooks(before, positions(restarted));
+        assertTrue(files(".tmp").isEmpty());
+    }
+
+    private static Iterator<Book> addedBooks(BookRepository repository) {
+        return IntStream.range(repository.firstAddedPosition(), repository.endPosition())
+                .mapToObj(repository::bookAt)
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+}
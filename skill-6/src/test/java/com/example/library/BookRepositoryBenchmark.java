@@ -0,0 +1,137 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// getBookById and addBook against BookRepository and against the CopyOnWriteArrayList
+// the controller used before, with size books already added. The store is rebuilt for
+// every iteration so inserts from one iteration do not grow the next one's data set.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BookRepositoryBenchmark {
+
+    @Param({"10000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"repository", "copyOnWriteList"})
+    public String store;
+
+    private Store books;
+
+    interface Store {
+        Book get(int id);
+
+        Book add(Book book);
+    }
+
+    // The previous LibraryController: linear scan of storedBooks, then the catalog
+    static final class CopyOnWriteListStore implements Store {
+        private final Map<Integer, Book> catalog = Map.of(
+                1, BookRepository.CATALOG.get(0),
+                2, BookRepository.CATALOG.get(1),
+                3, BookRepository.CATALOG.get(2));
+        private final List<Book> storedBooks;
+        private final AtomicInteger idGenerator;
+
+        CopyOnWriteListStore(List<Book> initial) {
+            storedBooks = new CopyOnWriteArrayList<>(initial);
+            idGenerator = new AtomicInteger(100 + initial.size());
+        }
+
+        @Override
+        public Book get(int id) {
+            return storedBooks.stream()
+                    .filter(book -> book.getId() != null && book.getId() == id)
+                    .findFirst()
+                    .orElseGet(() -> catalog.get(id));
+        }
+
+        @Override
+        public Book add(Book book) {
+            if (book.getId() == null) {
+                book.setId(idGenerator.incrementAndGet());
+            }
+            storedBooks.add(book);
+            return book;
+        }
+    }
+
+    static final class RepositoryStore implements Store {
+        private final BookRepository repository = new BookRepository();
+
+        RepositoryStore(List<Book> initial) {
+            initial.forEach(repository::save);
+        }
+
+        @Override
+        public Book get(int id) {
+            return repository.findById(id);
+        }
+
+        @Override
+        public Book add(Book book) {
+            return repository.save(book);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void fill() {
+        books = null;
+        List<Book> initial = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            initial.add(newBook(101 + i));
+        }
+        books = store.equals("repository") ? new RepositoryStore(initial) : new CopyOnWriteListStore(initial);
+    }
+
+    // Titles, authors and prices come from small pools so 10M books fit in the heap
+    private static final String[] TITLES = new String[1024];
+    private static final String[] AUTHORS = new String[256];
+    private static final Double PRICE = 29.99;
+
+    static {
+        for (int i = 0; i < TITLES.length; i++) {
+            TITLES[i] = "Benchmark Title " + i;
+        }
+        for (int i = 0; i < AUTHORS.length; i++) {
+            AUTHORS[i] = "Author " + i;
+        }
+    }
+
+    static Book newBook(Integer id) {
+        int n = id == null ? ThreadLocalRandom.current().nextInt(1 << 20) : id;
+        return new Book(id, TITLES[n & (TITLES.length - 1)], AUTHORS[n & (AUTHORS.length - 1)], PRICE);
+    }
+
+    @Benchmark
+    public Book getBookById() {
+        return books.get(101 + ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public Book addBook() {
+        return books.add(newBook(null));
+    }
+}
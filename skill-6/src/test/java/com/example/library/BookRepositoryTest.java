@@ -0,0 +1,67 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+// Saves without a journal: what the indexes are told must follow the order the store took the
+// books in, however many threads save the same ids.
+class BookRepositoryTest {
+
+    @Test
+    void notifiesIndexesInTheOrderBooksWereStored() throws Exception {
+        Map<Integer, Book> indexed = new ConcurrentHashMap<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        // a slow index holds each writer for a random while between storing its book and
+        // indexing it, where the others would overtake it if that were not one serialized step
+        BookIndex slow = (book, replaced) -> {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextInt(1_000_000));
+            Book previous = indexed.put(book.getId(), book);
+            if (previous != replaced) {
+                outOfOrder.incrementAndGet();
+            }
+        };
+        BookRepository repository = new BookRepository(List.of(slow));
+        long versionBefore = repository.version();
+        int threads = 8;
+        int saves = 100;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            writers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < saves; i++) {
+                    // every thread keeps replacing the same few ids
+                    repository.save(new Book(1000 + i % 10, "Thread " + thread + " save " + i, "Author", (double) i));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        pool.shutdown();
+
+        assertEquals(0, outOfOrder.get(), "books indexed as replacing one they did not replace");
+        for (int id = 1000; id < 1010; id++) {
+            assertSame(repository.findById(id), indexed.get(id), "book " + id);
+        }
+        assertEquals(versionBefore + threads * saves, repository.version());
+    }
+}
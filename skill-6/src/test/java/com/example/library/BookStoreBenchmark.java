@@ -0,0 +1,124 @@
+package com.example.library;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Heap and GC cost of `size` added books kept as heap objects (HeapBookStore) or in off-heap
+// columns (OffHeapBookStore). fullGc is a full collection with every book live, so its time is
+// the pause the stored books cost, and its heapUsedMb counter the heap they hold. serve is a
+// burst of getBookById lookups and saves; its gcMs counter is the collection time it caused.
+// Each score and counter covers one batch of BATCH calls (JMH sums counters over iterations).
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-XX:MaxDirectMemorySize=2g"})
+@Warmup(iterations = 1, batchSize = BookStoreBenchmark.BATCH)
+@Measurement(iterations = 1, batchSize = BookStoreBenchmark.BATCH)
+public class BookStoreBenchmark {
+
+    static final int BATCH = 5;
+    private static final int LOOKUPS = 1_000_000;
+    private static final int SAVES = 10_000;
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"heap", "off-heap"})
+    public String storage;
+
+    private BookRepository repository;
+    private TitleSearchBenchmark.TitleGenerator titles;
+    private SplittableRandom random;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Memory {
+        public long heapUsedMb;
+        public long gcMs;
+        private long gcMsBefore;
+
+        @Setup(Level.Iteration)
+        public void start() {
+            gcMsBefore = gcMillis();
+        }
+
+        void collected() {
+            gcMs = gcMillis() - gcMsBefore;
+        }
+
+        // only meaningful straight after a full collection, with no garbage left
+        void measureHeap() {
+            heapUsedMb = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+        }
+
+        private static long gcMillis() {
+            long total = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                total += collector.getCollectionTime();
+            }
+            return total;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void fill() {
+        BookStore store = storage.equals("heap") ? new HeapBookStore() : new OffHeapBookStore();
+        repository = new BookRepository(store, List.of(), Optional.empty());
+        titles = new TitleSearchBenchmark.TitleGenerator(42);
+        random = new SplittableRandom(7);
+        List<Book> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batch.add(newBook(i));
+            if (batch.size() == 10_000) {
+                repository.saveAll(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        repository.saveAll(batch);
+        System.gc();
+    }
+
+    // Author names built per book, as JSON binding would, from 10,000 distinct authors
+    private Book newBook(int i) {
+        return new Book(null, titles.next(), "Author " + (i % 10_000), 9.99 + i % 50);
+    }
+
+    @Benchmark
+    public void fullGc(Memory memory) {
+        System.gc();
+        memory.collected();
+        memory.measureHeap();
+    }
+
+    @Benchmark
+    public void serve(Memory memory, Blackhole blackhole) {
+        int ids = repository.endPosition();
+        for (int i = 0; i < LOOKUPS; i++) {
+            blackhole.consume(repository.findById(101 + random.nextInt(ids)));
+        }
+        for (int i = 0; i < SAVES; i++) {
+            repository.save(newBook(i));
+        }
+        memory.collected();
+    }
+}
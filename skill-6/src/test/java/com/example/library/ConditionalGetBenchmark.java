@@ -0,0 +1,72 @@
+package com.example.library;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.request.ServletWebRequest;
+
+// A dashboard poll of an unchanged library: a 100-book /viewbooks page rendered every time
+// (cache off), replayed from the ResponseCache, or answered 304 to If-None-Match.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConditionalGetBenchmark {
+
+    @Param({"render", "cached", "notModified"})
+    public String poll;
+
+    private LibraryController controller;
+    private String etag;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        BookRepository repository = new BookRepository();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            books.add(new Book(null, "Title " + i, "Author " + i % 100, 9.99 + i % 50));
+        }
+        repository.saveAll(books);
+        DataSize cacheSize = DataSize.ofMegabytes(poll.equals("render") ? 0 : 64);
+        controller = new LibraryController(repository, new TitleIndex(), new AuthorIndex(), new FuzzyIndex(), new PriceStatistics(),
+                new ResponseCache(cacheSize, cacheSize), new ObjectMapper());
+        etag = request(null).getHeaders().getETag();
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> viewBooksPage() throws IOException {
+        return request(poll.equals("notModified") ? etag : null);
+    }
+
+    private ResponseEntity<byte[]> request(String ifNoneMatch) throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/viewbooks");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ResponseEntity<byte[]> page = controller.viewBooksPage(null, 100, new ServletWebRequest(request, response));
+        return page != null ? page : ResponseEntity.status(response.getStatus()).build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.library;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// FuzzyIndex: the banded edit distance against the plain dynamic programme, the ranking of a
+// misspelt query, and what a search finds once a book has been replaced.
+class FuzzyIndexTest {
+
+    private final FuzzyIndex index = new FuzzyIndex();
+    // indexes the catalog, "Effective Java" by Joshua Bloch among it
+    private final BookRepository repository = new BookRepository(List.of(index));
+
+    // Optimal string alignment distance over the whole table; with prefix, to the closest
+    // prefix of b
+    private static int reference(String a, String b, boolean prefix) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                    continue;
+                }
+                d[i][j] = Math.min(d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1),
+                        Math.min(d[i - 1][j], d[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        int best = d[a.length()][b.length()];
+        if (prefix) {
+            for (int j = 0; j <= b.length(); j++) {
+                best = Math.min(best, d[a.length()][j]);
+            }
+        }
+        return best;
+    }
+
+    private static String word(Random random) {
+        // a small alphabet, so the words share letters and swaps are common
+        char[] letters = new char[random.nextInt(10)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(letters);
+    }
+
+    private List<String> titles(FuzzyResult result) {
+        return result.getMatches().stream().map(match -> match.getBook().getTitle()).toList();
+    }
+
+    @Test
+    void distanceMatchesTheFullTable() {
+        assertEquals(1, FuzzyIndex.distance("brian", "brain", 1, false));
+        assertEquals(1, FuzzyIndex.distance("efective", "effective", 2, false));
+        assertEquals(0, FuzzyIndex.distance("jav", "javascript", 1, true));
+        assertEquals(2, FuzzyIndex.distance("jav", "javascript", 1, false), "over the limit");
+        assertEquals(3, FuzzyIndex.distance("ca", "abc", 3, false), "a swapped pair is not edited again");
+
+        Random random = new Random(11);
+        for (int trial = 0; trial < 200_000; trial++) {
+            String a = word(random);
+            String b = word(random);
+            int max = random.nextInt(4);
+            boolean prefix = random.nextBoolean();
+            assertEquals(Math.min(max + 1, reference(a, b, prefix)), FuzzyIndex.distance(a, b, max, prefix),
+                    a + (prefix ? " (prefix)" : "") + " to " + b + " within " + max);
+        }
+    }
+
+    @Test
+    void ranksBooksByTheirBestMatchForEachWord() {
+        repository.save(new Book(null, "Effective Python", "Brett Slatkin", 39.99));
+        repository.save(new Book(null, "Java Concurrency in Practice", "Brian Goetz", 54.99));
+        repository.save(new Book(null, "Refactoring", "Martin Fowler", 47.99));
+
+        FuzzyResult result = index.search("Efective Jav", 10);
+
+        // "efective" is one edit from "effective", of two allowed; "jav" starts "java" exactly
+        assertEquals(List.of("Effective Java", "Java Concurrency in Practice", "Effective Python"), titles(result));
+        List<FuzzyResult.Match> matches = result.getMatches();
+        assertEquals(2 / 3.0 + 1, matches.get(0).getScore(), 1e-9);
+        assertEquals(1, matches.get(1).getScore(), 1e-9);
+        assertEquals(2 / 3.0, matches.get(2).getScore(), 1e-9);
+        assertEquals(List.of("Effective Java", "Java Concurrency in Practice"), titles(index.search("Efective Jav", 2)));
+    }
+
+    @Test
+    void findsABookByWhatReplacedItOnly() {
+        repository.save(new Book(2, "Refactoring", "Martin Fowler", 47.99));
+
+        assertTrue(index.search("Efective Jav", 10).getMatches().isEmpty(), "the replaced title");
+        assertTrue(index.search("Bloch", 10).getMatches().isEmpty(), "the replaced author");
+        FuzzyResult refactoring = index.search("Refactorng", 10);
+        assertEquals(List.of("Refactoring"), titles(refactoring));
+        assertEquals(2, refactoring.getMatches().get(0).getBook().getId());
+
+        // and back again, found once
+        repository.save(new Book(2, "Effective Java, 3rd edition", "Joshua Bloch", 54.99));
+        assertEquals(List.of("Effective Java, 3rd edition"), titles(index.search("Efective Jav", 10)));
+        assertTrue(index.search("Refactorng", 10).getMatches().isEmpty());
+    }
+}
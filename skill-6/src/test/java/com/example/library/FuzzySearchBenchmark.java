@@ -0,0 +1,93 @@
+package com.example.library;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Top-20 /search/fuzzy latency over `size` generated books. Queries take words from a real
+// title or author, misspell them (typos) and cut the last one short (typeAhead). SampleTime
+// mode reports the latency distribution, so the p0.99 line is the p99 to watch.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FuzzySearchBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    // exact: one or two words as written; typos: one typo in each word of 4 letters or more;
+    // typeAhead: typos, with the last word also cut short
+    @Param({"exact", "typos", "typeAhead"})
+    public String queryType;
+
+    private FuzzyIndex index;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        index = new FuzzyIndex();
+        BookRepository repository = new BookRepository(List.of(index));
+        TitleSearchBenchmark.TitleGenerator titles = new TitleSearchBenchmark.TitleGenerator(42);
+        TitleSearchBenchmark.TitleGenerator authors = new TitleSearchBenchmark.TitleGenerator(43);
+        for (int i = 0; i < size; i++) {
+            repository.save(new Book(null, titles.next(), author(authors), 19.99));
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        queries = new String[1024];
+        for (int i = 0; i < queries.length; i++) {
+            List<String> words = SearchText.words(random.nextInt(4) == 0 ? author(authors) : titles.next());
+            StringBuilder query = new StringBuilder();
+            int count = 1 + random.nextInt(2);
+            for (int w = 0; w < count; w++) {
+                String word = words.get(random.nextInt(words.size()));
+                if (!queryType.equals("exact") && word.length() >= 4) {
+                    word = typo(word, random);
+                }
+                if (queryType.equals("typeAhead") && w == count - 1 && word.length() >= 4) {
+                    word = word.substring(0, word.length() - 1 - random.nextInt(word.length() - 3));
+                }
+                query.append(w == 0 ? "" : " ").append(word);
+            }
+            queries[i] = query.toString();
+        }
+    }
+
+    // Two words, like a first name and a surname
+    private static String author(TitleSearchBenchmark.TitleGenerator authors) {
+        List<String> words = SearchText.words(authors.next());
+        return words.get(0) + " " + words.get(1);
+    }
+
+    // One letter dropped, doubled or swapped with the next, past the first
+    private static String typo(String word, SplittableRandom random) {
+        int at = 1 + random.nextInt(word.length() - 2);
+        return switch (random.nextInt(3)) {
+            case 0 -> word.substring(0, at) + word.substring(at + 1);
+            case 1 -> word.substring(0, at) + word.charAt(at) + word.substring(at);
+            default -> word.substring(0, at) + word.charAt(at + 1) + word.charAt(at) + word.substring(at + 2);
+        };
+    }
+
+    @Benchmark
+    public FuzzyResult search() {
+        return index.search(queries[ThreadLocalRandom.current().nextInt(queries.length)], 20);
+    }
+}
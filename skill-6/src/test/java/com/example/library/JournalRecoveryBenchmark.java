@@ -0,0 +1,102 @@
+package com.example.library;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+// Startup recovery of `size` added books, from a snapshot or from journal segments alone,
+// into a bare BookRepository or one with the title and author indexes. 10M indexed books
+// need more than the 3g heap.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class JournalRecoveryBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int size;
+
+    @Param({"snapshot", "journal"})
+    public String from;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Path directory;
+    private BookJournal journal;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        directory = Files.createTempDirectory("book-journal");
+        BookJournal writer = newJournal();
+        BookRepository repository = new BookRepository(List.of(), Optional.of(writer));
+        TitleSearchBenchmark.TitleGenerator titles = new TitleSearchBenchmark.TitleGenerator(42);
+        List<Book> batch = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            batch.add(new Book(null, titles.next(), "Author " + (i % 10_000), 9.99 + i % 50));
+            if (batch.size() == 10_000) {
+                repository.saveAll(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        repository.saveAll(batch);
+        if (from.equals("snapshot")) {
+            writer.snapshot(() -> {
+                int end = repository.endPosition();
+                return Stream.iterate(repository.firstAddedPosition(), p -> p < end, p -> p + 1)
+                        .map(repository::bookAt)
+                        .iterator();
+            });
+        }
+        writer.close();
+    }
+
+    private BookJournal newJournal() {
+        return new BookJournal(directory, DataSize.ofMegabytes(64), false, Duration.ZERO);
+    }
+
+    @Benchmark
+    public BookRepository recover() {
+        journal = newJournal();
+        List<BookIndex> indexes = indexed ? List.of(new TitleIndex(), new AuthorIndex()) : List.of();
+        return new BookRepository(indexes, Optional.of(journal));
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() {
+        journal.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
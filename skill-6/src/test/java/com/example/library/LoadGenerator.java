@@ -0,0 +1,511 @@
+package com.example.library;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Open-model load driver for a running LibraryApplication. Run it with the loadgen profile
+ * against an app started separately, for example
+ *
+ *   mvn spring-boot:run
+ *   mvn -Ploadgen test-compile exec:exec -Dloadgen.args="--rps=500 --duration=60s"
+ *
+ * Requests are sent on a fixed schedule, `rps` a second (evenly spaced, or with Poisson
+ * arrivals), whatever the app's response times, as independent users would: a slow response
+ * never holds back the next request. The operation of each request is drawn from `mix` with a
+ * seeded random, so two runs with the same options send the same sequence; the ids fetched are
+ * drawn the same way from the preloaded books, never from ones added during the run. Every
+ * request is handed to its own client thread, a virtual thread on Java 21 and later.
+ *
+ * Latency is measured from the time a request was scheduled, not from when it was sent, so
+ * time spent waiting for a client thread or a connection counts; measuring from the send alone
+ * would hide exactly the stalls a load test is after (coordinated omission). Service time,
+ * from the send, is recorded too, and the gap between the two shows the queueing. Both go to
+ * HdrHistogram recorders, read once a second into a timeline and a latency.hlog interval log.
+ *
+ * Before the run `preload` books are added through /addbooks, so /books/{id} and /search have
+ * something to find; requests in the first `warmup` are sent but not recorded. The report is
+ * written as report.json and report.html under `out`; given the report.json of an earlier run
+ * as `baseline`, the HTML compares the two.
+ */
+public class LoadGenerator {
+
+    enum Operation {
+        GET("GET /books/{id}"),
+        ADD("POST /addbook"),
+        VIEW("GET /viewbooks"),
+        SEARCH("GET /search");
+
+        final String endpoint;
+
+        Operation(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        String key() {
+            return name().toLowerCase();
+        }
+    }
+
+    // Load options, from --name=value arguments
+    static final class Options {
+        URI target = URI.create("http://localhost:8080");
+        double rps = 200;
+        Duration duration = Duration.ofSeconds(30);
+        Duration warmup = Duration.ofSeconds(5);
+        String arrivals = "uniform";
+        Map<Operation, Integer> mix = parseMix("get:60,add:10,view:15,search:15");
+        String clients = "virtual";
+        int threads = 200;
+        int preload = 10_000;
+        long seed = 42;
+        Duration timeout = Duration.ofSeconds(10);
+        int maxInFlight = 10_000;
+        Path out = Path.of("target", "loadgen");
+        String label = "";
+        Path baseline;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int equals = arg.indexOf('=');
+                if (!arg.startsWith("--") || equals < 0) {
+                    throw new IllegalArgumentException("Expected --name=value, got " + arg);
+                }
+                String value = arg.substring(equals + 1);
+                switch (arg.substring(2, equals)) {
+                    case "target" -> options.target = URI.create(value.endsWith("/") ? value.substring(0, value.length() - 1) : value);
+                    case "rps" -> options.rps = Double.parseDouble(value);
+                    case "duration" -> options.duration = DurationStyle.detectAndParse(value);
+                    case "warmup" -> options.warmup = DurationStyle.detectAndParse(value);
+                    case "arrivals" -> options.arrivals = oneOf(value, "uniform", "poisson");
+                    case "mix" -> options.mix = parseMix(value);
+                    case "clients" -> options.clients = oneOf(value, "virtual", "platform");
+                    case "threads" -> options.threads = Integer.parseInt(value);
+                    case "preload" -> options.preload = Integer.parseInt(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    case "timeout" -> options.timeout = DurationStyle.detectAndParse(value);
+                    case "max-in-flight" -> options.maxInFlight = Integer.parseInt(value);
+                    case "out" -> options.out = Path.of(value);
+                    case "label" -> options.label = value;
+                    case "baseline" -> options.baseline = Path.of(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (options.rps <= 0 || options.threads < 1 || options.preload < 1 || options.maxInFlight < 1) {
+                throw new IllegalArgumentException("rps, threads, preload and max-in-flight must be positive");
+            }
+            return options;
+        }
+
+        private static String oneOf(String value, String... allowed) {
+            if (!List.of(allowed).contains(value)) {
+                throw new IllegalArgumentException(value + " is not one of " + List.of(allowed));
+            }
+            return value;
+        }
+
+        // "get:60,add:10" -> relative weights; operations left out are not sent
+        static Map<Operation, Integer> parseMix(String mix) {
+            Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+            for (String part : mix.split(",")) {
+                String[] keyAndWeight = part.trim().split(":");
+                if (keyAndWeight.length != 2) {
+                    throw new IllegalArgumentException("Expected operation:weight in mix, got " + part);
+                }
+                int weight = Integer.parseInt(keyAndWeight[1].trim());
+                if (weight < 0) {
+                    throw new IllegalArgumentException("Negative weight in mix: " + part);
+                }
+                weights.put(Operation.valueOf(keyAndWeight[0].trim().toUpperCase()), weight);
+            }
+            if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+                throw new IllegalArgumentException("The mix sends nothing: " + mix);
+            }
+            return weights;
+        }
+
+        Map<String, Object> describe() {
+            Map<String, Object> described = new LinkedHashMap<>();
+            described.put("target", target.toString());
+            described.put("rps", rps);
+            described.put("durationSeconds", duration.toMillis() / 1000.0);
+            described.put("warmupSeconds", warmup.toMillis() / 1000.0);
+            described.put("arrivals", arrivals);
+            Map<String, Integer> weights = new LinkedHashMap<>();
+            mix.forEach((operation, weight) -> weights.put(operation.key(), weight));
+            described.put("mix", weights);
+            described.put("clients", clients);
+            described.put("threads", threads);
+            described.put("preload", preload);
+            described.put("seed", seed);
+            described.put("timeoutSeconds", timeout.toMillis() / 1000.0);
+            described.put("maxInFlight", maxInFlight);
+            return described;
+        }
+    }
+
+    // What was recorded for one operation. Recorders take the values from the client threads;
+    // the totals are only touched by the thread that reads them out once a second.
+    static final class OperationStats {
+        final Recorder latency = new Recorder(3);
+        final Recorder serviceTime = new Recorder(3);
+        final Histogram latencyTotal = new Histogram(3);
+        final Histogram serviceTimeTotal = new Histogram(3);
+        final LongAdder ok = new LongAdder();
+        // HTTP status -> responses, for every status other than 2xx
+        final Map<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+        // requests that got no response at all: refused, reset, timed out
+        final LongAdder failures = new LongAdder();
+        // requests not sent because max-in-flight were already waiting
+        final LongAdder dropped = new LongAdder();
+    }
+
+    // One second of the run, all operations together
+    static final class Tick {
+        final double second;
+        final long requests;
+        final double p50Us;
+        final double p99Us;
+        final double maxUs;
+
+        Tick(double second, Histogram interval) {
+            this.second = second;
+            this.requests = interval.getTotalCount();
+            this.p50Us = interval.getValueAtPercentile(50);
+            this.p99Us = interval.getValueAtPercentile(99);
+            this.maxUs = interval.getMaxValue();
+        }
+    }
+
+    private static final int PRELOAD_BATCH = 10_000;
+    private static final int VIEW_PAGE = 20;
+    private static final int VIEW_CURSORS = 50;
+    private static final PrintStream log = System.out;
+
+    private final Options options;
+    private final HttpClient client;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+    private final List<Tick> timeline = new ArrayList<>();
+    // ids of the books to fetch: the preloaded ones only, so the ids drawn do not depend on how
+    // many adds happened to complete first
+    private final IntAppendLog ids = new IntAppendLog();
+    // /viewbooks cursors of the first pages of added books
+    private final List<String> cursors = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final TitleSearchBenchmark.TitleGenerator titles;
+
+    LoadGenerator(Options options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(options.timeout)
+                .build();
+        this.titles = new TitleSearchBenchmark.TitleGenerator(options.seed);
+        for (Operation operation : options.mix.keySet()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new LoadGenerator(Options.parse(args)).run();
+    }
+
+    void run() throws IOException, InterruptedException {
+        preload();
+        Instant startedAt = Instant.now();
+        Path directory = options.out.resolve(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")
+                .withZone(ZoneId.systemDefault()).format(startedAt) + (options.label.isEmpty() ? "" : "-" + options.label));
+        Files.createDirectories(directory);
+
+        ExecutorService clients = clients();
+        long begin = System.nanoTime();
+        long measureFrom = begin + options.warmup.toNanos();
+        long end = measureFrom + options.duration.toNanos();
+        log.printf("Sending %.0f requests/s to %s for %.0fs after a %.0fs warmup%n", options.rps, options.target,
+                options.duration.toMillis() / 1000.0, options.warmup.toMillis() / 1000.0);
+        try (PrintStream hlog = new PrintStream(Files.newOutputStream(directory.resolve("latency.hlog")), false,
+                StandardCharsets.UTF_8)) {
+            HistogramLogWriter logWriter = new HistogramLogWriter(hlog);
+            logWriter.outputLogFormatVersion();
+            logWriter.outputLegend();
+            Thread ticker = new Thread(() -> tickEverySecond(measureFrom, end, logWriter), "loadgen-ticker");
+            ticker.setDaemon(true);
+            ticker.start();
+            long scheduled = send(clients, begin, measureFrom, end);
+            clients.shutdown();
+            if (!clients.awaitTermination(options.timeout.toMillis() + 1000, TimeUnit.MILLISECONDS)) {
+                log.println("Requests still outstanding after the timeout; stopping them");
+                clients.shutdownNow();
+            }
+            ticker.interrupt();
+            ticker.join();
+            tick(measureFrom, logWriter, true); // whatever finished after the last full second
+
+            LoadReport report = new LoadReport(options, startedAt, scheduled, stats, timeline,
+                    options.baseline == null ? null : objectMapper.readTree(options.baseline.toFile()));
+            report.write(directory, objectMapper);
+            log.println(report.summary());
+            log.println("Report written to " + directory.toAbsolutePath());
+        }
+    }
+
+    // Sends on schedule until end; returns the number of requests scheduled after the warmup
+    private long send(ExecutorService clients, long begin, long measureFrom, long end) {
+        SplittableRandom random = new SplittableRandom(options.seed);
+        Operation[] operations = options.mix.keySet().toArray(new Operation[0]);
+        int[] cumulative = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += options.mix.get(operations[i]);
+            cumulative[i] = sum;
+        }
+        double interval = 1e9 / options.rps;
+        double offset = 0;
+        long scheduled = 0;
+        while (true) {
+            long intended = begin + (long) offset;
+            if (intended >= end) {
+                return scheduled;
+            }
+            int pick = random.nextInt(sum);
+            int i = 0;
+            while (cumulative[i] <= pick) {
+                i++;
+            }
+            Operation operation = operations[i];
+            HttpRequest request = request(operation, random);
+            boolean measured = intended >= measureFrom;
+            if (measured) {
+                scheduled++;
+            }
+            for (long wait = intended - System.nanoTime(); wait > 0; wait = intended - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            dispatch(clients, operation, request, intended, measured);
+            offset += options.arrivals.equals("poisson") ? -Math.log(1 - random.nextDouble()) * interval : interval;
+        }
+    }
+
+    private void dispatch(ExecutorService clients, Operation operation, HttpRequest request, long intended,
+                          boolean measured) {
+        OperationStats recorded = stats.get(operation);
+        if (inFlight.incrementAndGet() > options.maxInFlight) {
+            inFlight.decrementAndGet();
+            if (measured) {
+                recorded.dropped.increment();
+            }
+            return;
+        }
+        clients.execute(() -> {
+            long sent = System.nanoTime();
+            try {
+                HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                if (response.statusCode() / 100 == 2) {
+                    if (measured) {
+                        recorded.ok.increment();
+                    }
+                } else if (measured) {
+                    recorded.errors.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+                }
+            } catch (IOException e) {
+                if (measured) {
+                    recorded.failures.increment();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (measured) {
+                    recorded.failures.increment();
+                }
+            } finally {
+                // failed requests too: a timeout is the slowest response of all
+                long done = System.nanoTime();
+                if (measured) {
+                    recorded.latency.recordValue((done - intended) / 1000);
+                    recorded.serviceTime.recordValue((done - sent) / 1000);
+                }
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    private HttpRequest request(Operation operation, SplittableRandom random) {
+        return switch (operation) {
+            case GET -> get("/books/" + ids.get(random.nextInt(ids.size())));
+            case ADD -> HttpRequest.newBuilder(uri("/addbook"))
+                    .timeout(options.timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(json(newBook(random))))
+                    .build();
+            case VIEW -> {
+                String cursor = cursors.get(random.nextInt(cursors.size()));
+                yield get("/viewbooks?limit=" + VIEW_PAGE + (cursor == null ? "" : "&cursor=" + cursor));
+            }
+            case SEARCH -> get("/search?title=" + URLEncoder.encode(titles.word(), StandardCharsets.UTF_8));
+        };
+    }
+
+    private Map<String, Object> newBook(SplittableRandom random) {
+        Map<String, Object> book = new LinkedHashMap<>();
+        book.put("title", titles.next());
+        book.put("author", "Author " + random.nextInt(10_000));
+        book.put("price", Math.round((5 + random.nextDouble() * 95) * 100) / 100.0);
+        return book;
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).timeout(options.timeout).GET().build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(options.target + path);
+    }
+
+    private String json(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void remember(JsonNode id) {
+        if (id.isInt()) {
+            ids.append(id.intValue());
+        }
+    }
+
+    // Adds `preload` books through /addbooks, then collects cursors of the first pages of
+    // /viewbooks to spread the view requests over
+    private void preload() throws IOException, InterruptedException {
+        log.printf("Preloading %d books into %s%n", options.preload, options.target);
+        for (int added = 0; added < options.preload; added += PRELOAD_BATCH) {
+            StringBuilder ndjson = new StringBuilder();
+            SplittableRandom random = new SplittableRandom(options.seed + added);
+            for (int i = added; i < Math.min(options.preload, added + PRELOAD_BATCH); i++) {
+                ndjson.append(json(newBook(random))).append('\n');
+            }
+            HttpRequest request = HttpRequest.newBuilder(uri("/addbooks"))
+                    .timeout(Duration.ofMinutes(5))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                    .build();
+            for (JsonNode item : expectOk(request).path("items")) {
+                remember(item.path("id"));
+            }
+        }
+        if (ids.size() == 0) {
+            throw new IllegalStateException("Preloading added no books");
+        }
+        cursors.add(null);
+        String cursor = null;
+        for (int page = 1; page < VIEW_CURSORS; page++) {
+            cursor = expectOk(get("/viewbooks?limit=" + VIEW_PAGE + (cursor == null ? "" : "&cursor=" + cursor)))
+                    .path("nextCursor").asText(null);
+            if (cursor == null) {
+                break;
+            }
+            cursors.add(cursor);
+        }
+    }
+
+    private JsonNode expectOk(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() / 100 != 2) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " answered "
+                    + response.statusCode() + ": " + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    // Virtual threads (Java 21+) make a client blocked on a response nearly free, so each
+    // request gets its own. They are looked up reflectively, as the build targets Java 17;
+    // there, or with --clients=platform, a pool of `threads` platform threads sends instead.
+    private ExecutorService clients() {
+        if (options.clients.equals("virtual")) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (NoSuchMethodException e) {
+                log.printf("Virtual threads need Java 21 or later; using %d platform threads%n", options.threads);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        AtomicInteger created = new AtomicInteger();
+        return Executors.newFixedThreadPool(options.threads, task -> {
+            Thread thread = new Thread(task, "loadgen-client-" + created.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void tickEverySecond(long measureFrom, long end, HistogramLogWriter logWriter) {
+        long next = measureFrom + TimeUnit.SECONDS.toNanos(1);
+        while (!Thread.currentThread().isInterrupted()) {
+            for (long wait = next - System.nanoTime(); wait > 0; wait = next - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+            }
+            tick(measureFrom, logWriter, false);
+            next += TimeUnit.SECONDS.toNanos(1);
+        }
+    }
+
+    // Moves what was recorded since the last tick into the totals, the timeline and the log;
+    // the last, a fraction of a second of stragglers, only into the totals and the log
+    private synchronized void tick(long measureFrom, HistogramLogWriter logWriter, boolean last) {
+        double second = Math.max(0, (System.nanoTime() - measureFrom) / 1e9);
+        Histogram all = new Histogram(3);
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats recorded = entry.getValue();
+            Histogram latency = recorded.latency.getIntervalHistogram();
+            recorded.latencyTotal.add(latency);
+            recorded.serviceTimeTotal.add(recorded.serviceTime.getIntervalHistogram());
+            all.add(latency);
+            latency.setTag(entry.getKey().key());
+            logWriter.outputIntervalHistogram(latency);
+        }
+        if (last) {
+            return;
+        }
+        Tick tick = new Tick(second, all);
+        timeline.add(tick);
+        log.printf("%5.0fs %7d req/s  p50 %8.2f ms  p99 %8.2f ms  in flight %d%n",
+                second, tick.requests, tick.p50Us / 1000, tick.p99Us / 1000, inFlight.get());
+    }
+}
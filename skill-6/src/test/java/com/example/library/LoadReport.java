@@ -0,0 +1,381 @@
+package com.example.library;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.springframework.web.util.HtmlUtils;
+
+/**
+ * The results of one LoadGenerator run, as report.json and a self-contained report.html.
+ * Times are in microseconds in the JSON and milliseconds in the HTML. A baseline is the
+ * report.json of an earlier run; the HTML then shows its figures and curves next to these.
+ */
+class LoadReport {
+
+    // Percentiles in the summaries, as JSON keys and column titles
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    // The percentile curve stops here; beyond it a 60-second run has a handful of samples
+    private static final double MAX_CHART_PERCENTILE = 99.999;
+    private static final String[] COLORS = {"#1f77b4", "#d62728", "#2ca02c", "#9467bd", "#ff7f0e", "#8c564b"};
+
+    private final Map<String, Object> model = new LinkedHashMap<>();
+    private final JsonNode baseline;
+
+    LoadReport(LoadGenerator.Options options, Instant startedAt, long scheduled,
+               Map<LoadGenerator.Operation, LoadGenerator.OperationStats> stats, List<LoadGenerator.Tick> timeline,
+               JsonNode baseline) {
+        this.baseline = baseline;
+        model.put("label", options.label);
+        model.put("startedAt", startedAt.toString());
+        model.put("options", options.describe());
+
+        long ok = 0;
+        long errors = 0;
+        long failures = 0;
+        long dropped = 0;
+        Histogram latency = new Histogram(3);
+        Map<String, Object> operations = new LinkedHashMap<>();
+        for (Map.Entry<LoadGenerator.Operation, LoadGenerator.OperationStats> entry : stats.entrySet()) {
+            LoadGenerator.OperationStats recorded = entry.getValue();
+            Map<String, Object> operation = new LinkedHashMap<>();
+            operation.put("endpoint", entry.getKey().endpoint);
+            operation.put("requests", recorded.latencyTotal.getTotalCount());
+            operation.put("ok", recorded.ok.sum());
+            Map<String, Long> statuses = new TreeMap<>();
+            recorded.errors.forEach((status, count) -> statuses.put(String.valueOf(status), count.sum()));
+            operation.put("errors", statuses);
+            operation.put("failures", recorded.failures.sum());
+            operation.put("dropped", recorded.dropped.sum());
+            operation.put("latencyUs", summary(recorded.latencyTotal));
+            operation.put("serviceTimeUs", summary(recorded.serviceTimeTotal));
+            operation.put("distribution", distribution(recorded.latencyTotal));
+            operations.put(entry.getKey().key(), operation);
+
+            ok += recorded.ok.sum();
+            errors += statuses.values().stream().mapToLong(Long::longValue).sum();
+            failures += recorded.failures.sum();
+            dropped += recorded.dropped.sum();
+            latency.add(recorded.latencyTotal);
+        }
+        double seconds = options.duration.toMillis() / 1000.0;
+        Map<String, Object> totals = new LinkedHashMap<>();
+        totals.put("scheduled", scheduled);
+        totals.put("completed", latency.getTotalCount());
+        totals.put("ok", ok);
+        totals.put("errors", errors);
+        totals.put("failures", failures);
+        totals.put("dropped", dropped);
+        totals.put("achievedRps", latency.getTotalCount() / seconds);
+        totals.put("latencyUs", summary(latency));
+        model.put("totals", totals);
+        model.put("operations", operations);
+
+        List<Map<String, Object>> ticks = new ArrayList<>();
+        for (LoadGenerator.Tick tick : timeline) {
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("second", Math.round(tick.second * 10) / 10.0);
+            point.put("requests", tick.requests);
+            point.put("p50Us", tick.p50Us);
+            point.put("p99Us", tick.p99Us);
+            point.put("maxUs", tick.maxUs);
+            ticks.add(point);
+        }
+        model.put("timeline", ticks);
+    }
+
+    private static Map<String, Object> summary(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("min", histogram.getTotalCount() == 0 ? 0 : histogram.getMinValue());
+        summary.put("mean", Math.round(histogram.getMean() * 10) / 10.0);
+        for (double percentile : PERCENTILES) {
+            summary.put(key(percentile), histogram.getValueAtPercentile(percentile));
+        }
+        summary.put("max", histogram.getMaxValue());
+        return summary;
+    }
+
+    // 50 -> "p50", 99.9 -> "p99.9"
+    private static String key(double percentile) {
+        return "p" + (percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile));
+    }
+
+    // The latency at percentiles closer and closer to 100, HdrHistogram's usual steps
+    private static List<double[]> distribution(Histogram histogram) {
+        List<double[]> points = new ArrayList<>();
+        if (histogram.getTotalCount() == 0) {
+            return points;
+        }
+        for (HistogramIterationValue value : histogram.percentiles(5)) {
+            double percentile = value.getPercentileLevelIteratedTo();
+            if (percentile > MAX_CHART_PERCENTILE) {
+                break;
+            }
+            points.add(new double[] {percentile, histogram.highestEquivalentValue(value.getValueIteratedTo())});
+        }
+        points.add(new double[] {MAX_CHART_PERCENTILE, histogram.getValueAtPercentile(MAX_CHART_PERCENTILE)});
+        return points;
+    }
+
+    void write(Path directory, ObjectMapper objectMapper) throws IOException {
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(directory.resolve("report.json").toFile(), model);
+        Files.writeString(directory.resolve("report.html"), html(), StandardCharsets.UTF_8);
+    }
+
+    // A few lines for the console
+    @SuppressWarnings("unchecked")
+    String summary() {
+        Map<String, Object> totals = (Map<String, Object>) model.get("totals");
+        StringBuilder text = new StringBuilder(String.format(Locale.ROOT,
+                "%d requests, %.1f/s: %d ok, %d errors, %d failures, %d dropped%n",
+                totals.get("completed"), (double) totals.get("achievedRps"), totals.get("ok"), totals.get("errors"),
+                totals.get("failures"), totals.get("dropped")));
+        Map<String, Object> operations = (Map<String, Object>) model.get("operations");
+        for (Map.Entry<String, Object> entry : operations.entrySet()) {
+            Map<String, Object> latency = (Map<String, Object>) ((Map<String, Object>) entry.getValue()).get("latencyUs");
+            text.append(String.format(Locale.ROOT, "  %-7s p50 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms  max %8.2f ms%n",
+                    entry.getKey(), ms(latency.get("p50")), ms(latency.get("p99")), ms(latency.get("p99.9")),
+                    ms(latency.get("max"))));
+        }
+        return text.toString().stripTrailing();
+    }
+
+    private static double ms(Object micros) {
+        return ((Number) micros).doubleValue() / 1000;
+    }
+
+    @SuppressWarnings("unchecked")
+    private String html() {
+        Map<String, Object> totals = (Map<String, Object>) model.get("totals");
+        Map<String, Object> operations = (Map<String, Object>) model.get("operations");
+        String label = (String) model.get("label");
+        StringBuilder html = new StringBuilder();
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Load report")
+                .append(label.isEmpty() ? "" : " " + escape(label)).append("</title>\n<style>")
+                .append("body{font-family:sans-serif;margin:2em;color:#222}")
+                .append("table{border-collapse:collapse;margin:1em 0}")
+                .append("th,td{border:1px solid #ccc;padding:4px 8px;text-align:right}")
+                .append("th:first-child,td:first-child{text-align:left}")
+                .append(".worse{color:#c00}.better{color:#080}svg{margin:1em 2em 1em 0}")
+                .append("</style></head><body>\n");
+        html.append("<h1>Load report").append(label.isEmpty() ? "" : ": " + escape(label)).append("</h1>\n");
+        html.append("<p>Started ").append(escape((String) model.get("startedAt")));
+        if (baseline != null) {
+            html.append("; compared with the run started ").append(escape(baseline.path("startedAt").asText()))
+                    .append(baseline.path("label").asText().isEmpty() ? "" : " (" + escape(baseline.path("label").asText()) + ")");
+        }
+        html.append(".</p>\n");
+
+        html.append("<h2>Options</h2>\n<table>");
+        ((Map<String, Object>) model.get("options")).forEach((name, value) ->
+                html.append("<tr><td>").append(escape(name)).append("</td><td>").append(escape(String.valueOf(value)))
+                        .append("</td></tr>"));
+        html.append("</table>\n");
+
+        html.append("<h2>Totals</h2>\n<table><tr>");
+        for (String name : List.of("scheduled", "completed", "ok", "errors", "failures", "dropped", "achievedRps")) {
+            html.append("<th>").append(name).append("</th>");
+        }
+        html.append("</tr><tr>");
+        for (String name : List.of("scheduled", "completed", "ok", "errors", "failures", "dropped")) {
+            html.append("<td>").append(totals.get(name)).append("</td>");
+        }
+        html.append("<td>").append(String.format(Locale.ROOT, "%.1f", (double) totals.get("achievedRps")))
+                .append("</td></tr></table>\n");
+
+        html.append("<h2>Latency (ms), from the scheduled send</h2>\n<table><tr><th>operation</th><th>requests</th>")
+                .append("<th>errors</th><th>failures</th><th>dropped</th>");
+        for (double percentile : PERCENTILES) {
+            html.append("<th>").append(key(percentile)).append("</th>");
+        }
+        html.append("<th>max</th><th>service time p99</th></tr>\n");
+        for (Map.Entry<String, Object> entry : operations.entrySet()) {
+            Map<String, Object> operation = (Map<String, Object>) entry.getValue();
+            Map<String, Object> latency = (Map<String, Object>) operation.get("latencyUs");
+            JsonNode before = baseline == null ? null : baseline.path("operations").path(entry.getKey());
+            html.append("<tr><td>").append(escape(entry.getKey())).append(" <small>")
+                    .append(escape((String) operation.get("endpoint"))).append("</small></td><td>")
+                    .append(operation.get("requests")).append("</td><td>")
+                    .append(errors((Map<String, Long>) operation.get("errors"))).append("</td><td>")
+                    .append(operation.get("failures")).append("</td><td>").append(operation.get("dropped"))
+                    .append("</td>");
+            for (double percentile : PERCENTILES) {
+                cell(html, latency.get(key(percentile)), before == null ? null : before.path("latencyUs").path(key(percentile)));
+            }
+            cell(html, latency.get("max"), before == null ? null : before.path("latencyUs").path("max"));
+            cell(html, ((Map<String, Object>) operation.get("serviceTimeUs")).get("p99"),
+                    before == null ? null : before.path("serviceTimeUs").path("p99"));
+            html.append("</tr>\n");
+        }
+        html.append("</table>\n");
+        if (baseline != null) {
+            html.append("<p>Each cell shows this run, then the baseline and the change.</p>\n");
+        }
+
+        List<Series> curves = new ArrayList<>();
+        int color = 0;
+        for (Map.Entry<String, Object> entry : operations.entrySet()) {
+            String colorCode = COLORS[color++ % COLORS.length];
+            List<double[]> points = (List<double[]>) ((Map<String, Object>) entry.getValue()).get("distribution");
+            curves.add(new Series(entry.getKey(), colorCode, false, nines(points)));
+            if (baseline != null) {
+                List<double[]> before = new ArrayList<>();
+                for (JsonNode point : baseline.path("operations").path(entry.getKey()).path("distribution")) {
+                    before.add(new double[] {point.get(0).asDouble(), point.get(1).asDouble()});
+                }
+                curves.add(new Series(entry.getKey() + " (baseline)", colorCode, true, nines(before)));
+            }
+        }
+        html.append("<h2>Latency by percentile</h2>\n")
+                .append(chart("ms", curves, new double[] {0, 1, 2, 3, 4, 5},
+                        new String[] {"0%", "90%", "99%", "99.9%", "99.99%", "99.999%"}));
+
+        List<Map<String, Object>> ticks = (List<Map<String, Object>>) model.get("timeline");
+        List<double[]> p99 = new ArrayList<>();
+        List<double[]> p50 = new ArrayList<>();
+        List<double[]> throughput = new ArrayList<>();
+        for (Map<String, Object> tick : ticks) {
+            double second = ((Number) tick.get("second")).doubleValue();
+            p99.add(new double[] {second, ms(tick.get("p99Us"))});
+            p50.add(new double[] {second, ms(tick.get("p50Us"))});
+            throughput.add(new double[] {second, ((Number) tick.get("requests")).doubleValue()});
+        }
+        double lastSecond = ticks.isEmpty() ? 1 : ((Number) ticks.get(ticks.size() - 1).get("second")).doubleValue();
+        double[] secondTicks = new double[6];
+        String[] secondLabels = new String[6];
+        for (int i = 0; i < secondTicks.length; i++) {
+            secondTicks[i] = lastSecond * i / 5;
+            secondLabels[i] = String.format(Locale.ROOT, "%.0fs", secondTicks[i]);
+        }
+        html.append("<h2>Over the run</h2>\n")
+                .append(chart("ms", List.of(new Series("p99", COLORS[1], false, p99),
+                        new Series("p50", COLORS[0], false, p50)), secondTicks, secondLabels))
+                .append(chart("completed/s", List.of(new Series("requests", COLORS[2], false, throughput)),
+                        secondTicks, secondLabels));
+        html.append("\n</body></html>\n");
+        return html.toString();
+    }
+
+    // {404=3, 500=1} -> "404: 3, 500: 1"
+    private static String errors(Map<String, Long> statuses) {
+        if (statuses.isEmpty()) {
+            return "0";
+        }
+        StringBuilder text = new StringBuilder();
+        statuses.forEach((status, count) -> text.append(text.length() == 0 ? "" : ", ").append(status).append(": ").append(count));
+        return text.toString();
+    }
+
+    private static void cell(StringBuilder html, Object micros, JsonNode baselineMicros) {
+        double now = ms(micros);
+        html.append("<td>").append(String.format(Locale.ROOT, "%.2f", now));
+        if (baselineMicros != null && baselineMicros.isNumber()) {
+            double before = baselineMicros.asDouble() / 1000;
+            double change = before == 0 ? 0 : (now - before) / before * 100;
+            html.append(String.format(Locale.ROOT, "<br><small>%.2f <span class=\"%s\">%+.0f%%</span></small>", before,
+                    change > 5 ? "worse" : change < -5 ? "better" : "", change));
+        }
+        html.append("</td>");
+    }
+
+    // (percentile, µs) -> (log10 of 1 / (1 - percentile/100), ms), so each "nine" gets equal width
+    private static List<double[]> nines(List<double[]> points) {
+        List<double[]> placed = new ArrayList<>(points.size());
+        for (double[] point : points) {
+            double percentile = Math.min(point[0], MAX_CHART_PERCENTILE);
+            placed.add(new double[] {Math.log10(100 / (100 - percentile)), point[1] / 1000});
+        }
+        return placed;
+    }
+
+    private static final class Series {
+        final String name;
+        final String color;
+        final boolean dashed;
+        final List<double[]> points;
+
+        Series(String name, String color, boolean dashed, List<double[]> points) {
+            this.name = name;
+            this.color = color;
+            this.dashed = dashed;
+            this.points = points;
+        }
+    }
+
+    // A line chart as inline SVG: x from the first to the last tick, y from 0 to the highest point
+    private static String chart(String yTitle, List<Series> series, double[] xTicks, String[] xLabels) {
+        int width = 640;
+        int height = 320;
+        int left = 60;
+        int right = 150;
+        int top = 20;
+        int bottom = 40;
+        double xMin = xTicks[0];
+        double xMax = xTicks[xTicks.length - 1] > xMin ? xTicks[xTicks.length - 1] : xMin + 1;
+        double yMax = 0;
+        for (Series line : series) {
+            for (double[] point : line.points) {
+                yMax = Math.max(yMax, point[1]);
+            }
+        }
+        yMax = yMax == 0 ? 1 : yMax * 1.05;
+        double plotWidth = width - left - right;
+        double plotHeight = height - top - bottom;
+
+        StringBuilder svg = new StringBuilder();
+        svg.append(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" "
+                + "font-size=\"11\">", width, height));
+        svg.append(String.format(Locale.ROOT, "<rect x=\"%d\" y=\"%d\" width=\"%.0f\" height=\"%.0f\" fill=\"none\" "
+                + "stroke=\"#999\"/>", left, top, plotWidth, plotHeight));
+        for (int i = 0; i < xTicks.length; i++) {
+            double x = left + (xTicks[i] - xMin) / (xMax - xMin) * plotWidth;
+            svg.append(String.format(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%d\" x2=\"%.1f\" y2=\"%.0f\" stroke=\"#eee\"/>"
+                    + "<text x=\"%.1f\" y=\"%d\" text-anchor=\"middle\">%s</text>",
+                    x, top, x, top + plotHeight, x, height - bottom + 15, xLabels[i]));
+        }
+        for (int i = 0; i <= 4; i++) {
+            double y = top + plotHeight - plotHeight * i / 4;
+            svg.append(String.format(Locale.ROOT, "<line x1=\"%d\" y1=\"%.1f\" x2=\"%.0f\" y2=\"%.1f\" stroke=\"#eee\"/>"
+                    + "<text x=\"%d\" y=\"%.1f\" text-anchor=\"end\">%.3g</text>",
+                    left, y, left + plotWidth, y, left - 5, y + 4, yMax * i / 4));
+        }
+        svg.append(String.format(Locale.ROOT, "<text x=\"12\" y=\"%.0f\" transform=\"rotate(-90 12 %.0f)\" "
+                + "text-anchor=\"middle\">%s</text>", top + plotHeight / 2, top + plotHeight / 2, escape(yTitle)));
+        int legend = 0;
+        for (Series line : series) {
+            if (line.points.isEmpty()) {
+                continue;
+            }
+            StringBuilder points = new StringBuilder();
+            for (double[] point : line.points) {
+                points.append(String.format(Locale.ROOT, "%.1f,%.1f ",
+                        left + (point[0] - xMin) / (xMax - xMin) * plotWidth, top + plotHeight - point[1] / yMax * plotHeight));
+            }
+            String dash = line.dashed ? " stroke-dasharray=\"4 3\"" : "";
+            svg.append(String.format(Locale.ROOT, "<polyline points=\"%s\" fill=\"none\" stroke=\"%s\" stroke-width=\"1.5\"%s/>",
+                    points.toString().trim(), line.color, dash));
+            double y = top + 10 + 16 * legend++;
+            svg.append(String.format(Locale.ROOT, "<line x1=\"%.0f\" y1=\"%.0f\" x2=\"%.0f\" y2=\"%.0f\" stroke=\"%s\" "
+                    + "stroke-width=\"1.5\"%s/><text x=\"%.0f\" y=\"%.0f\">%s</text>",
+                    left + plotWidth + 10, y, left + plotWidth + 30, y, line.color, dash, left + plotWidth + 35, y + 4,
+                    escape(line.name)));
+        }
+        return svg.append("</svg>\n").toString();
+    }
+
+    private static String escape(String text) {
+        return HtmlUtils.htmlEscape(text);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// OffHeapBookStore against HeapBookStore: the same stores must give the same books back, by id
+// and by position, whatever the columns, the title arena and the id table do underneath.
+class OffHeapBookStoreTest {
+
+    private static final int TITLE_CHUNK_BYTES = 1 << 20;
+
+    private final HeapBookStore heap = new HeapBookStore();
+    private final OffHeapBookStore offHeap = new OffHeapBookStore();
+    private final AtomicInteger heapIds = new AtomicInteger(100);
+    private final AtomicInteger offHeapIds = new AtomicInteger(100);
+
+    // Stores the batch in both stores, each getting its own copies, and checks they agree on
+    // what it replaced
+    private void storeAll(List<Book> batch) {
+        List<Book> heapReplaced = heap.storeAll(copies(batch), heapIds);
+        List<Book> offHeapReplaced = offHeap.storeAll(copies(batch), offHeapIds);
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(fields(heapReplaced.get(i)), fields(offHeapReplaced.get(i)), "replaced by " + i);
+        }
+    }
+
+    private void store(Book book) {
+        storeAll(List.of(book));
+    }
+
+    private static List<Book> copies(List<Book> books) {
+        return books.stream()
+                .map(book -> new Book(book.getId(), book.getTitle(), book.getAuthor(), book.getPrice()))
+                .toList();
+    }
+
+    private static List<Object> fields(Book book) {
+        return book == null ? null : Arrays.asList(book.getId(), book.getTitle(), book.getAuthor(), book.getPrice());
+    }
+
+    private void assertSameBooks() {
+        assertEquals(heap.size(), offHeap.size(), "size");
+        assertEquals(heap.count(), offHeap.count(), "count");
+        for (int position = 0; position < heap.size(); position++) {
+            Book book = heap.bookAt(position);
+            assertEquals(fields(book), fields(offHeap.bookAt(position)), "position " + position);
+            if (book != null) {
+                assertEquals(fields(book), fields(offHeap.findById(book.getId())), "book " + book.getId());
+            }
+        }
+    }
+
+    @Test
+    void storesTheSameBooksAsTheHeapStore() {
+        Random random = new Random(23);
+        String[] authors = {"Jane Austen", "Fyodor Dostoyevsky", "Фёдор Достоевский", "村上 春樹", "", null};
+        int positions = 0;
+        while (positions < 500_000) {
+            List<Book> batch = new ArrayList<>();
+            for (int i = random.nextInt(20) + 1; i > 0; i--) {
+                // mostly new books, some replacing a stored one or taking an id ahead of the generator
+                Integer id = switch (random.nextInt(10)) {
+                    case 0, 1 -> 101 + random.nextInt(Math.max(1, heapIds.get() - 100));
+                    case 2 -> heapIds.get() + 1 + random.nextInt(50);
+                    default -> null;
+                };
+                String title = switch (random.nextInt(20)) {
+                    case 0 -> null;
+                    case 1 -> "";
+                    case 2 -> "Über die Freiheit " + random.nextInt();
+                    // now and then one long enough to run on into the next arena chunk
+                    case 3 -> "ß".repeat(random.nextInt(100) == 0 ? random.nextInt(100_000) : random.nextInt(50));
+                    default -> "Title " + random.nextInt();
+                };
+                Double price = random.nextInt(10) == 0 ? null : random.nextInt(10_000) / 100.0;
+                batch.add(new Book(id, title, authors[random.nextInt(authors.length)], price));
+            }
+            storeAll(batch);
+            positions += batch.size();
+        }
+        assertSameBooks();
+        for (int id = 0; id <= heapIds.get() + 50; id++) {
+            assertEquals(fields(heap.findById(id)), fields(offHeap.findById(id)), "book " + id);
+        }
+    }
+
+    @Test
+    void titlesRunOnAcrossArenaChunks() {
+        // fill the first chunk up to a few bytes before its end, then straddle the boundary with
+        // multi-byte characters, whose bytes land on both sides of it
+        store(new Book(null, "a".repeat(TITLE_CHUNK_BYTES - 3), "Author", 1.0));
+        store(new Book(null, "€ü€", "Author", 2.0));
+        // and one title longer than a whole chunk
+        store(new Book(null, "é".repeat(TITLE_CHUNK_BYTES) + "end", "Author", 3.0));
+        store(new Book(null, "After", "Author", 4.0));
+
+        assertSameBooks();
+        assertEquals("€ü€", offHeap.bookAt(1).getTitle());
+        assertEquals("After", offHeap.bookAt(3).getTitle());
+    }
+
+    @Test
+    void keepsNullFieldsApartFromEmptyAndNaNOnes() {
+        store(new Book(null, null, null, null));
+        store(new Book(null, "", "", Double.NaN));
+        store(new Book(null, "Title", "Author", -0.0));
+
+        assertSameBooks();
+        Book nulls = offHeap.bookAt(0);
+        assertNull(nulls.getTitle());
+        assertNull(nulls.getAuthor());
+        assertNull(nulls.getPrice());
+        Book empty = offHeap.bookAt(1);
+        assertEquals("", empty.getTitle());
+        assertEquals("", empty.getAuthor());
+        assertTrue(empty.getPrice().isNaN(), "a NaN price is not the no-price NaN");
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(offHeap.bookAt(2).getPrice()));
+    }
+
+    @Test
+    void aReplacedBookLeavesItsPositionEmpty() {
+        for (int i = 0; i < 5; i++) {
+            store(new Book(null, "Book " + i, "Author", (double) i));
+        }
+        store(new Book(102, "Second edition", "Author", 10.0));
+        store(new Book(102, "Third edition", "Author", 20.0));
+
+        assertSameBooks();
+        assertEquals(7, offHeap.size());
+        assertEquals(5, offHeap.count());
+        assertNull(offHeap.bookAt(1), "first edition");
+        assertNull(offHeap.bookAt(5), "second edition");
+        assertEquals("Third edition", offHeap.bookAt(6).getTitle());
+        assertEquals("Third edition", offHeap.findById(102).getTitle());
+        assertEquals("Book 0", offHeap.bookAt(0).getTitle());
+    }
+
+    @Test
+    void findsEveryBookAfterTheIdTableGrows() {
+        // the table starts at 1024 slots and grows at three quarters full; scattered ids collide
+        // in it more than consecutive ones
+        for (int i = 0; i < 20_000; i++) {
+            store(new Book(i % 2 == 0 ? null : 1_000_000 + i * 7919, "Book " + i, "Author", (double) i));
+        }
+        // and replacements of books moved by the growth
+        for (int i = 1; i < 20_000; i += 100) {
+            store(new Book(1_000_000 + i * 7919, "Replaced " + i, "Author", (double) -i));
+        }
+        assertSameBooks();
+    }
+
+    @Test
+    void readersNeverSeeAHalfStoredBook() throws Exception {
+        int books = 200_000;
+        AtomicBoolean storing = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        // one reader looks books up by id while they are stored and the id table grows under it
+        Future<?> reader = pool.submit(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (storing.get()) {
+                int id = 101 + random.nextInt(books);
+                Book book = offHeap.findById(id);
+                if (book != null) {
+                    // a book found by id is the whole row, and stays found
+                    assertEquals(Arrays.asList(id, "Book " + id, "Author " + id % 100, (double) id), fields(book));
+                    assertNotNull(offHeap.findById(id), "book " + id + " lost");
+                }
+                int size = offHeap.size();
+                if (size > 0) {
+                    Book atPosition = offHeap.bookAt(random.nextInt(size));
+                    if (atPosition != null) {
+                        assertEquals("Book " + atPosition.getId(), atPosition.getTitle());
+                    }
+                }
+            }
+            return null;
+        });
+        Future<?> writer = pool.submit(() -> {
+            try {
+                for (int i = 0; i < books; i++) {
+                    int id = 101 + i;
+                    offHeap.storeAll(List.of(new Book(null, "Book " + id, "Author " + id % 100, (double) id)), offHeapIds);
+                }
+            } finally {
+                storing.set(false);
+            }
+            return null;
+        });
+        writer.get();
+        reader.get();
+        pool.shutdown();
+
+        for (int id = 101; id <= 100 + books; id++) {
+            assertEquals("Book " + id, offHeap.findById(id).getTitle());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.library;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// PriceStatistics against the prices themselves: count, min, max and mean exact, every
+// percentile within the stated relative accuracy, before and after books are replaced.
+class PriceStatisticsTest {
+
+    private final PriceStatistics statistics = new PriceStatistics();
+
+    // Log-normal around 20, rounded to cents, as in PriceStatsBenchmark
+    private static double price(SplittableRandom random) {
+        return Math.round(Math.exp(3 + random.nextGaussian()) * 100) / 100.0;
+    }
+
+    // Tells statistics that book id now has price, replacing the one it had
+    private void replace(Double[] prices, int id, Double price) {
+        Book replaced = prices[id] == null ? null : new Book(id, "Title", "Author", prices[id]);
+        statistics.indexed(new Book(id, "Title", "Author", price), replaced);
+        prices[id] = price;
+    }
+
+    private void assertMatches(Double[] prices) {
+        double[] sorted = Arrays.stream(prices).filter(Objects::nonNull).mapToDouble(Double::doubleValue)
+                .sorted()
+                .toArray();
+        PriceStats stats = statistics.stats();
+
+        assertEquals(sorted.length, stats.getCount(), "count");
+        assertEquals(sorted[0], stats.getMin(), "min");
+        assertEquals(sorted[sorted.length - 1], stats.getMax(), "max");
+        double mean = Arrays.stream(sorted).sum() / sorted.length;
+        assertEquals(mean, stats.getMean(), mean * 1e-9, "mean");
+
+        assertEquals(PriceStatistics.RELATIVE_ACCURACY, stats.getRelativeAccuracy());
+        for (int percentile : PriceStatistics.PERCENTILES) {
+            double exact = sorted[(int) (percentile / 100.0 * (sorted.length - 1))];
+            double estimate = stats.getPercentiles().get("p" + percentile);
+            assertTrue(Math.abs(estimate - exact) <= PriceStatistics.RELATIVE_ACCURACY * exact * (1 + 1e-9),
+                    "p" + percentile + ": " + estimate + " for " + exact);
+        }
+    }
+
+    @Test
+    void matchesTheExactFiguresBeforeAndAfterReplacements() {
+        SplittableRandom random = new SplittableRandom(42);
+        Double[] prices = new Double[1_000_000];
+        for (int id = 0; id < prices.length; id++) {
+            replace(prices, id, price(random));
+        }
+        assertMatches(prices);
+
+        for (int i = 0; i < 100_000; i++) {
+            // now and then a book loses its price
+            replace(prices, random.nextInt(prices.length), random.nextInt(100) == 0 ? null : price(random));
+        }
+        // and the cheapest and dearest books are replaced with ones in between
+        for (int i = 0; i < 10; i++) {
+            int cheapest = 0;
+            int dearest = 0;
+            for (int id = 0; id < prices.length; id++) {
+                if (prices[id] != null && (prices[cheapest] == null || prices[id] < prices[cheapest])) {
+                    cheapest = id;
+                }
+                if (prices[id] != null && (prices[dearest] == null || prices[id] > prices[dearest])) {
+                    dearest = id;
+                }
+            }
+            replace(prices, cheapest, 20.0);
+            replace(prices, dearest, 20.0);
+        }
+        assertMatches(prices);
+    }
+
+    @Test
+    void leavesOutBooksWithoutAFinitePrice() {
+        assertEquals(0, statistics.stats().getCount());
+        assertNull(statistics.stats().getMin());
+
+        Double[] prices = new Double[5];
+        replace(prices, 0, 12.5);
+        statistics.indexed(new Book(1, "Title", "Author", null), null);
+        statistics.indexed(new Book(2, "Title", "Author", Double.NaN), null);
+        statistics.indexed(new Book(3, "Title", "Author", Double.POSITIVE_INFINITY), null);
+        replace(prices, 4, 7.5);
+        assertMatches(prices);
+
+        replace(prices, 0, null);
+        replace(prices, 4, null);
+        PriceStats stats = statistics.stats();
+        assertEquals(0, stats.getCount());
+        assertNull(stats.getMin());
+        assertNull(stats.getMax());
+        assertNull(stats.getMean());
+        assertTrue(stats.getPercentiles().isEmpty());
+    }
+}
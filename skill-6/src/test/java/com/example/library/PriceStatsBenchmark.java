@@ -0,0 +1,67 @@
+package com.example.library;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// /price/stats read cost over `size` priced books, which should not grow with size, and the
+// cost each save adds to keep the statistics up to date.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PriceStatsBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int size;
+
+    private PriceStatistics statistics;
+    private Book[] books;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        statistics = new PriceStatistics();
+        BookRepository repository = new BookRepository(List.of(statistics));
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < size; i++) {
+            repository.save(new Book(null, "Title", "Author", price(random)));
+        }
+        books = new Book[1024];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = new Book(i, "Title", "Author", price(random));
+        }
+    }
+
+    // Log-normal around 20, rounded to cents
+    private static double price(SplittableRandom random) {
+        return Math.round(Math.exp(3 + random.nextGaussian()) * 100) / 100.0;
+    }
+
+    @Benchmark
+    public PriceStats stats() {
+        return statistics.stats();
+    }
+
+    // A new book followed, half the time, by the removal of a replaced one
+    @Benchmark
+    public void indexed() {
+        Book book = books[next++ & (books.length - 1)];
+        statistics.indexed(book, (next & 1) == 0 ? book : null);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.library;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// First-page /search latency over `size` generated titles. SampleTime mode reports the
+// latency distribution, so the p0.99 line is the p99 to watch.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TitleSearchBenchmark {
+
+    @Param({"1000000"})
+    public int size;
+
+    // word: one whole word; twoWords: two words of one title; prefix: the first 2-3 letters
+    // of a word (type-ahead); wordAndPrefix: a whole word followed by a prefix
+    @Param({"word", "twoWords", "prefix", "wordAndPrefix"})
+    public String queryType;
+
+    private TitleIndex index;
+    private String[] queries;
+
+    @Setup(Level.Trial)
+    public void fill() {
+        index = new TitleIndex();
+        BookRepository repository = new BookRepository(List.of(index));
+        TitleGenerator titles = new TitleGenerator(42);
+        for (int i = 0; i < size; i++) {
+            repository.save(new Book(null, titles.next(), "Author", 19.99));
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        queries = new String[1024];
+        for (int i = 0; i < queries.length; i++) {
+            List<String> words = SearchText.words(titles.next());
+            String first = words.get(random.nextInt(words.size()));
+            String second = words.get(random.nextInt(words.size()));
+            String prefix = second.substring(0, Math.min(second.length(), 2 + random.nextInt(2)));
+            switch (queryType) {
+                case "word" -> queries[i] = first;
+                case "twoWords" -> queries[i] = first + " " + second;
+                case "prefix" -> queries[i] = prefix;
+                default -> queries[i] = first + " " + prefix;
+            }
+        }
+    }
+
+    @Benchmark
+    public SearchResult search() {
+        return index.search(queries[ThreadLocalRandom.current().nextInt(queries.length)], 0, 20);
+    }
+
+    // Titles of 2 to 7 words from a 20,000 word vocabulary with a skewed (roughly Zipfian)
+    // word frequency, like real titles
+    static final class TitleGenerator {
+        private static final String[] SYLLABLES = {
+                "ka", "lo", "mi", "ne", "ru", "sa", "te", "vo", "zi", "ba", "de", "fu", "go", "hi",
+                "ja", "pe", "qu", "ri", "so", "tu", "wa", "xe", "yo", "an", "el", "in", "or", "us"};
+        private final String[] vocabulary = new String[20_000];
+        private final SplittableRandom random;
+
+        TitleGenerator(long seed) {
+            random = new SplittableRandom(seed);
+            for (int i = 0; i < vocabulary.length; i++) {
+                StringBuilder word = new StringBuilder();
+                int n = i;
+                do {
+                    word.append(SYLLABLES[n % SYLLABLES.length]);
+                    n /= SYLLABLES.length;
+                } while (n > 0);
+                vocabulary[i] = word.toString();
+            }
+        }
+
+        String next() {
+            int length = 2 + random.nextInt(6);
+            StringBuilder title = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                String word = word();
+                title.append(i == 0 ? "" : " ").append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+            }
+            return title.toString();
+        }
+
+        // One word, as often as it turns up in titles
+        String word() {
+            double r = random.nextDouble();
+            return vocabulary[(int) (vocabulary.length * r * r * r)];
+        }
+    }
+}